@@ -2,9 +2,11 @@ package com.nplab.extension;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 import org.springframework.boot.web.servlet.support.SpringBootServletInitializer;
 
 @SpringBootApplication
+@EnableScheduling
 public class ExtensionBackend extends SpringBootServletInitializer{
 
 	public static void main(String[] args) {
@@ -1,18 +1,29 @@
 package com.nplab.extension.auth;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.caffeine.CaffeineCache;
 import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserCache;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.security.core.userdetails.cache.SpringCacheBasedUserCache;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 
+import com.github.benmanes.caffeine.cache.Caffeine;
 import com.nplab.extension.dao.UserDao;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+
+import java.time.Duration;
 import java.util.ArrayList;
 
+import javax.annotation.PostConstruct;
+
 @Service
 public class CustomUserDetailsService implements UserDetailsService {
 
@@ -22,14 +33,47 @@ public class CustomUserDetailsService implements UserDetailsService {
     @Autowired
     private PasswordEncoder bcryptEncoder;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Value("${auth.user-cache.ttl-seconds:60}")
+    private long userCacheTtlSeconds;
+
+    //users recently loaded, so that authenticated requests do not query the user table every time
+    private UserCache userCache;
+
+    @PostConstruct
+    private void createUserCache() {
+        com.github.benmanes.caffeine.cache.Cache<Object, Object> users = Caffeine.newBuilder()
+                .maximumSize(1000)
+                .expireAfterWrite(Duration.ofSeconds(userCacheTtlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, users, "users");
+        userCache = new SpringCacheBasedUserCache(new CaffeineCache("users", users));
+    }
+
     @Override
     public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
-    	com.nplab.extension.db.User user = userDao.findByUsername(username);
+        UserDetails cached = userCache.getUserFromCache(username);
+        if (cached == null) {
+            com.nplab.extension.db.User user = userDao.findByUsername(username);
+
+            if (user == null) {
+                throw new UsernameNotFoundException("User not found");
+            }
 
-        if (user == null) {
-            throw new UsernameNotFoundException("User not found");
+            cached = new User(user.getUsername(), user.getPassword(), new ArrayList<>());
+            userCache.putUserInCache(cached);
         }
 
-        return new User(user.getUsername(), user.getPassword(), new ArrayList<>());
+        //callers such as the AuthenticationManager erase the credentials of the returned user, so the cached one is copied
+        return User.withUserDetails(cached).build();
+    }
+
+    //drop a user from the cache, so that it is loaded again from the user table. The table is changed by the tracker,
+    //so the cache is evicted where a change shows: a rejected password, which may be outdated, and a logout
+    public void evictUser(String username) {
+        userCache.removeUserFromCache(username);
     }
 }
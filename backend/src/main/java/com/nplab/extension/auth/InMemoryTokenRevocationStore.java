@@ -0,0 +1,55 @@
+package com.nplab.extension.auth;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
+/**
+ * Revoked tokens of a single node, held in a Caffeine cache whose entries are evicted when their token expires. The
+ * cache has no size bound, as evicting a revoked token early would make it valid again: it holds the tokens logged out
+ * within one token lifetime
+ */
+@Component
+public class InMemoryTokenRevocationStore implements TokenRevocationStore {
+
+    //token ID to expiration time in milliseconds
+    private final Cache<String, Long> revokedTokens;
+
+    public InMemoryTokenRevocationStore() {
+        this.revokedTokens = Caffeine.newBuilder()
+                .expireAfter(new Expiry<String, Long>() {
+                    @Override
+                    public long expireAfterCreate(String tokenId, Long expiresAt, long currentTime) {
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, expiresAt - System.currentTimeMillis()));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String tokenId, Long expiresAt, long currentTime, long currentDuration) {
+                        return expireAfterCreate(tokenId, expiresAt, currentTime);
+                    }
+
+                    @Override
+                    public long expireAfterRead(String tokenId, Long expiresAt, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .build();
+    }
+
+    @Override
+    public void revoke(String tokenId, Date expiration) {
+        if (expiration.after(new Date())) {
+            revokedTokens.put(tokenId, expiration.getTime());
+        }
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        return revokedTokens.getIfPresent(tokenId) != null;
+    }
+}
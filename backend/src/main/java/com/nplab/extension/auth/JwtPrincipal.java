@@ -0,0 +1,51 @@
+package com.nplab.extension.auth;
+
+import java.io.Serializable;
+import java.security.Principal;
+import java.util.Date;
+
+/**
+ * Authenticated user of a request, built once by JwtRequestFilter from the verified claims of its JWT,
+ * so that controllers can read the token details without parsing it again
+ */
+public class JwtPrincipal implements Principal, Serializable {
+
+    private static final long serialVersionUID = 3319405874511526407L;
+
+    private final String username;
+    private final String tokenId;
+    private final Date expiration;
+
+    public JwtPrincipal(String username, String tokenId, Date expiration) {
+        this.username = username;
+        this.tokenId = tokenId;
+        this.expiration = expiration;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getTokenId() {
+        return tokenId;
+    }
+
+    public Date getExpiration() {
+        return expiration;
+    }
+
+    //check if the token of the request has expired
+    public boolean isExpired() {
+        return expiration.before(new Date());
+    }
+
+    @Override
+    public String getName() {
+        return username;
+    }
+
+    @Override
+    public String toString() {
+        return "JwtPrincipal [username=" + username + ", tokenId=" + tokenId + ", expiration=" + expiration + "]";
+    }
+}
@@ -10,15 +10,17 @@ import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.AccessDeniedException;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 
-import io.jsonwebtoken.ExpiredJwtException;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
 
 @Component
 public class JwtRequestFilter extends OncePerRequestFilter {
@@ -29,38 +31,41 @@ public class JwtRequestFilter extends OncePerRequestFilter {
     @Autowired
     private JwtUtil jwtUtil;
 
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    //authenticate requests from the token claims alone, without looking up the user table
+    @Value("${jwt.stateless:false}")
+    private boolean stateless;
+
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
             throws ServletException, IOException {
     	final String requestTokenHeader = request.getHeader("Authorization");
 
 
-    	String username = null;
+    	Claims claims = null;
         String jwtToken = null;
 
         if (requestTokenHeader != null && requestTokenHeader.startsWith("Bearer ")) {
             jwtToken = requestTokenHeader.substring(7);
             try {
-                username = jwtUtil.getUsernameFromToken(jwtToken);
-            } catch (IllegalArgumentException e) {
-                throw new AccessDeniedException("Unauthorized");
-            } catch (ExpiredJwtException e) {
-                throw new AccessDeniedException("Unauthorized");
+                // The token is parsed and its signature verified only once per request
+                claims = jwtUtil.getAllClaimsFromToken(jwtToken);
+            } catch (JwtException | IllegalArgumentException e) {
+                // An invalid or expired token leaves the request unauthenticated, so that it is rejected
+                // with a 401 by JwtAuthEntryPoint before reaching any controller
+                logger.debug("Rejected JWT Token: " + e.getMessage());
             }
-        } else {
-            logger.warn("JWT Token does not begin with Bearer String");
         }
 
-        if (username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-            UserDetails userDetails = this.customUserDetailsService.loadUserByUsername(username);
+        if (claims != null && !tokenRevocationStore.isRevoked(jwtUtil.getTokenId(claims))
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
 
+            UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = stateless
+                    ? authenticationFromClaims(claims) : authenticationFromUser(claims);
 
-
-            if (jwtUtil.validateToken(jwtToken, userDetails)) {
-
-                UsernamePasswordAuthenticationToken usernamePasswordAuthenticationToken = new UsernamePasswordAuthenticationToken(
-                        userDetails, null, userDetails.getAuthorities());
+            if (usernamePasswordAuthenticationToken != null) {
                 usernamePasswordAuthenticationToken
                         .setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
                 
@@ -70,4 +75,26 @@ public class JwtRequestFilter extends OncePerRequestFilter {
         chain.doFilter(request, response);
     }
 
+    //the token is signed by this backend, so its verified claims are trusted without loading the user from the database
+    private UsernamePasswordAuthenticationToken authenticationFromClaims(Claims claims) {
+        JwtPrincipal principal = new JwtPrincipal(claims.getSubject(), jwtUtil.getTokenId(claims), claims.getExpiration());
+        return new UsernamePasswordAuthenticationToken(principal, null, jwtUtil.getAuthoritiesFromClaims(claims));
+    }
+
+    private UsernamePasswordAuthenticationToken authenticationFromUser(Claims claims) {
+        UserDetails userDetails;
+        try {
+            userDetails = this.customUserDetailsService.loadUserByUsername(claims.getSubject());
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+
+        if (!jwtUtil.validateClaims(claims, userDetails)) {
+            return null;
+        }
+
+        JwtPrincipal principal = new JwtPrincipal(userDetails.getUsername(), jwtUtil.getTokenId(claims), claims.getExpiration());
+        return new UsernamePasswordAuthenticationToken(principal, null, userDetails.getAuthorities());
+    }
+
 }
\ No newline at end of file
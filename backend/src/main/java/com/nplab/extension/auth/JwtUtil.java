@@ -2,21 +2,35 @@ package com.nplab.extension.auth;
 
 import java.io.Serializable;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Component;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+
 import io.jsonwebtoken.Claims;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 
 @Component
 public class JwtUtil implements Serializable {
@@ -24,12 +38,48 @@ public class JwtUtil implements Serializable {
     private static final long serialVersionUID = -2550185165626007488L;
 
     private static final long JWT_TOKEN_VALIDITY = 5 * 60 * 60;
+
+    //claim holding the authorities of the user, so that the token alone can authenticate a request
+    private static final String ROLES_CLAIM = "roles";
     
 
     
     @Value("${jwt.secret}")
     private String secret;
 
+    //verified claims keyed by the SHA-256 hash of their token, each entry is evicted when its token expires
+    private final transient Cache<String, Claims> verifiedClaims;
+
+    @Autowired
+    public JwtUtil(MeterRegistry meterRegistry, @Value("${jwt.cache.maximum-size:1000}") long maximumSize) {
+        this.verifiedClaims = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfter(new Expiry<String, Claims>() {
+                    @Override
+                    public long expireAfterCreate(String key, Claims claims, long currentTime) {
+                        if (claims.getExpiration() == null) {
+                            return Long.MAX_VALUE;
+                        }
+                        long remaining = claims.getExpiration().getTime() - System.currentTimeMillis();
+                        return TimeUnit.MILLISECONDS.toNanos(Math.max(0, remaining));
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+
+                    @Override
+                    public long expireAfterRead(String key, Claims claims, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        //hit rate is exposed at /actuator/metrics/cache.gets?tag=cache:jwtClaims
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedClaims, "jwtClaims");
+    }
+
     //retrieve username from jwt token
     public String getUsernameFromToken(String token) {
         return getClaimFromToken(token, Claims::getSubject);
@@ -47,10 +97,50 @@ public class JwtUtil implements Serializable {
         return claimsResolver.apply(claims);
     }
     //for retrieveing any information from token we will need the secret key
-    private Claims getAllClaimsFromToken(String token) {
+    //parses and verifies the token, callers needing several claims should call this once and read them from the result
+    //a token already verified is answered from the cache, expired or invalid tokens are never cached
+    public Claims getAllClaimsFromToken(String token) {
+        return verifiedClaims.get(hash(token), key -> parseClaims(token));
+    }
+
+    private Claims parseClaims(String token) {
         return Jwts.parser().setSigningKey(secret.getBytes(Charset.forName("UTF-8"))).parseClaimsJws(token.replace("{", "").replace("}","")).getBody();
     }
 
+    //drop the verified claims of a token, e.g. on logout, so that it is parsed and verified again when presented
+    public void invalidate(String token) {
+        verifiedClaims.invalidate(hash(token));
+    }
+
+    private static String hash(String token) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return Base64.getEncoder().encodeToString(digest.digest(token.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    //retrieve the ID of the token, tokens issued without a jti are identified by their subject and issue time
+    public String getTokenId(Claims claims) {
+        if (claims.getId() != null) {
+            return claims.getId();
+        }
+        return claims.getSubject() + "@" + (claims.getIssuedAt() == null ? "" : claims.getIssuedAt().getTime());
+    }
+
+    //retrieve the authorities embedded in the token at login, none for tokens issued without them
+    public List<GrantedAuthority> getAuthoritiesFromClaims(Claims claims) {
+        List<GrantedAuthority> authorities = new ArrayList<>();
+        Object roles = claims.get(ROLES_CLAIM);
+        if (roles instanceof List) {
+            for (Object role : (List<?>) roles) {
+                authorities.add(new SimpleGrantedAuthority(String.valueOf(role)));
+            }
+        }
+        return authorities;
+    }
+
     //check if the token has expired
     public Boolean isTokenExpired(String token) {
         final Date expiration = getExpirationDateFromToken(token);
@@ -61,25 +151,35 @@ public class JwtUtil implements Serializable {
     public String generateToken(UserDetails userDetails) {
 
         Map<String, Object> claims = new HashMap<>();
+        List<String> roles = new ArrayList<>();
+        for (GrantedAuthority authority : userDetails.getAuthorities()) {
+            roles.add(authority.getAuthority());
+        }
+        claims.put(ROLES_CLAIM, roles);
         String token = doGenerateToken(claims, userDetails.getUsername());
         return token;
     }
 
     //while creating the token -
-    //1. Define  claims of the token, like Issuer, Expiration, Subject, and the ID
+    //1. Define  claims of the token, like Issuer, Expiration, Subject, and the ID (jti) used to revoke it
     //2. Sign the JWT using the HS512 algorithm and secret key.
     //3. According to JWS Compact Serialization(https://tools.ietf.org/html/draft-ietf-jose-json-web-signature-41#section-3.1)
     //   compaction of the JWT to a URL-safe string
     private String doGenerateToken(Map<String, Object> claims, String subject) {
 
-        return Jwts.builder().setClaims(claims).setSubject(subject).setIssuedAt(new Date(System.currentTimeMillis()))
+        return Jwts.builder().setClaims(claims).setId(UUID.randomUUID().toString()).setSubject(subject)
+                .setIssuedAt(new Date(System.currentTimeMillis()))
                 .setExpiration(new Date(System.currentTimeMillis() + JWT_TOKEN_VALIDITY * 1000))
                 .signWith(SignatureAlgorithm.HS512, secret.getBytes(Charset.forName("UTF-8"))).compact();
     }
 
     //validate token
     public Boolean validateToken(String token, UserDetails userDetails) {
-        final String username = getUsernameFromToken(token);
-        return (username.equals(userDetails.getUsername()) && !isTokenExpired(token));
+        return validateClaims(getAllClaimsFromToken(token), userDetails);
+    }
+
+    //validate the already verified claims of a token
+    public Boolean validateClaims(Claims claims, UserDetails userDetails) {
+        return (claims.getSubject().equals(userDetails.getUsername()) && !claims.getExpiration().before(new Date()));
     }
 }
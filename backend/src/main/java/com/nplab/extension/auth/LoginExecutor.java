@@ -0,0 +1,46 @@
+package com.nplab.extension.auth;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.CustomizableThreadFactory;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool on which login passwords are hashed, so that a burst of logins queues here instead of
+ * holding the request threads serving the dashboard. It is not exposed as an Executor bean, which would
+ * replace the application task executor
+ */
+@Component
+public class LoginExecutor {
+
+    private final ThreadPoolExecutor executor;
+
+    public LoginExecutor(@Value("${auth.login.threads:2}") int threads,
+                         @Value("${auth.login.queue-capacity:50}") int queueCapacity) {
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new CustomizableThreadFactory("login-"),
+                new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /**
+     * @param login Login to run on the pool
+     * @return Future completed with the result of the login
+     * @throws RejectedExecutionException if the queue of the pool is full
+     */
+    public <T> CompletableFuture<T> submit(Supplier<T> login) {
+        return CompletableFuture.supplyAsync(login, executor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
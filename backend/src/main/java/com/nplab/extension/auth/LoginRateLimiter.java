@@ -0,0 +1,89 @@
+package com.nplab.extension.auth;
+
+import java.time.Duration;
+import java.util.function.LongSupplier;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+
+/**
+ * Token-bucket rate limiting of login attempts per username and per client IP, so that a burst of logins
+ * (or a credential-stuffing attempt) is rejected before it reaches the password encoder.
+ * Buckets of keys idle for longer than it takes to refill them completely are evicted
+ */
+@Component
+public class LoginRateLimiter {
+
+    private final Cache<String, TokenBucket> usernameBuckets;
+    private final Cache<String, TokenBucket> ipBuckets;
+    private final int usernameCapacity;
+    private final int ipCapacity;
+    private final double usernameRefillPerMilli;
+    private final double ipRefillPerMilli;
+    private final LongSupplier clock;
+
+    @Autowired
+    public LoginRateLimiter(@Value("${auth.login.username-attempts-per-minute:5}") int usernameAttemptsPerMinute,
+                            @Value("${auth.login.ip-attempts-per-minute:20}") int ipAttemptsPerMinute,
+                            @Value("${auth.login.rate-limit.maximum-keys:10000}") long maximumKeys) {
+        this(usernameAttemptsPerMinute, ipAttemptsPerMinute, maximumKeys, System::currentTimeMillis);
+    }
+
+    //clock giving the time in milliseconds buckets are refilled at
+    LoginRateLimiter(int usernameAttemptsPerMinute, int ipAttemptsPerMinute, long maximumKeys, LongSupplier clock) {
+        this.usernameCapacity = usernameAttemptsPerMinute;
+        this.ipCapacity = ipAttemptsPerMinute;
+        this.usernameRefillPerMilli = usernameAttemptsPerMinute / 60000.0;
+        this.ipRefillPerMilli = ipAttemptsPerMinute / 60000.0;
+        this.usernameBuckets = Caffeine.newBuilder().maximumSize(maximumKeys).expireAfterAccess(Duration.ofMinutes(1)).build();
+        this.ipBuckets = Caffeine.newBuilder().maximumSize(maximumKeys).expireAfterAccess(Duration.ofMinutes(1)).build();
+        this.clock = clock;
+    }
+
+    /**
+     * Takes a login attempt from the buckets of the username and of the client IP
+     * @param username Username the login is attempted for
+     * @param ip Address of the client attempting the login
+     * @return false if either bucket is empty, in which case the login must be rejected
+     */
+    public boolean tryAcquire(String username, String ip) {
+        TokenBucket ipBucket = ipBuckets.get(ip, key -> new TokenBucket(ipCapacity, ipRefillPerMilli, clock));
+        if (!ipBucket.tryConsume()) {
+            return false;
+        }
+        TokenBucket usernameBucket = usernameBuckets.get(String.valueOf(username),
+                key -> new TokenBucket(usernameCapacity, usernameRefillPerMilli, clock));
+        return usernameBucket.tryConsume();
+    }
+
+    private static class TokenBucket {
+        private final int capacity;
+        private final double refillPerMilli;
+        private final LongSupplier clock;
+        private double tokens;
+        private long lastRefill;
+
+        TokenBucket(int capacity, double refillPerMilli, LongSupplier clock) {
+            this.capacity = capacity;
+            this.refillPerMilli = refillPerMilli;
+            this.clock = clock;
+            this.tokens = capacity;
+            this.lastRefill = clock.getAsLong();
+        }
+
+        synchronized boolean tryConsume() {
+            long now = clock.getAsLong();
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerMilli);
+            lastRefill = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens--;
+            return true;
+        }
+    }
+}
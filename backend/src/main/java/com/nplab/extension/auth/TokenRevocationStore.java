@@ -0,0 +1,24 @@
+package com.nplab.extension.auth;
+
+import java.util.Date;
+
+/**
+ * Store of tokens revoked on logout, keyed by token ID (the jti claim). JwtRequestFilter checks it on every request,
+ * so implementations must answer isRevoked in constant time. InMemoryTokenRevocationStore serves a single node,
+ * a store shared between instances can replace it by being declared as a @Primary bean
+ */
+public interface TokenRevocationStore {
+
+    /**
+     * Revokes a token until it expires, after which the parser rejects it anyway
+     * @param tokenId ID of the token
+     * @param expiration Expiration of the token
+     */
+    void revoke(String tokenId, Date expiration);
+
+    /**
+     * @param tokenId ID of the token
+     * @return true if the token has been revoked and has not expired yet
+     */
+    boolean isRevoked(String tokenId);
+}
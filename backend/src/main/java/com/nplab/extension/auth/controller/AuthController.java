@@ -1,31 +1,38 @@
 package com.nplab.extension.auth.controller;
 
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.BadCredentialsException;
 import org.springframework.security.authentication.DisabledException;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.web.bind.annotation.*;
 
 import com.nplab.extension.auth.CustomUserDetailsService;
+import com.nplab.extension.auth.JwtPrincipal;
 import com.nplab.extension.auth.JwtRequest;
 import com.nplab.extension.auth.JwtResponse;
 import com.nplab.extension.auth.JwtUtil;
+import com.nplab.extension.auth.LoginExecutor;
+import com.nplab.extension.auth.LoginRateLimiter;
+import com.nplab.extension.auth.TokenRevocationStore;
 
 @CrossOrigin(origins = "http://localhost:4200", maxAge = 3600)
 @RestController
 @RequestMapping(path = "/authenticate")
 public class AuthController {
 	
-	private static ArrayList<String> expiredTokens = new ArrayList<>();
-	
     @Autowired
     private AuthenticationManager authenticationManager;
 
@@ -35,24 +42,53 @@ public class AuthController {
     @Autowired
     private CustomUserDetailsService customUserDetailsService;
 
+    @Autowired
+    private TokenRevocationStore tokenRevocationStore;
+
+    @Autowired
+    private LoginRateLimiter loginRateLimiter;
+
+    @Autowired
+    private LoginExecutor loginExecutor;
+
     @PostMapping(path = "/login")
-    public ResponseEntity<?> createAuthToken(@RequestBody JwtRequest authRequest) throws Exception {
-    	authenticate(authRequest.getUsername(), authRequest.getPassword());
-        UserDetails userDetails = customUserDetailsService.loadUserByUsername(authRequest.getUsername());
-        String token = jwtUtil.generateToken(userDetails);
+    public CompletableFuture<ResponseEntity<?>> createAuthToken(@RequestBody JwtRequest authRequest, HttpServletRequest request) {
+    	// The remote address is the client's own behind a trusted proxy, see server.forward-headers-strategy
+    	if (!loginRateLimiter.tryAcquire(authRequest.getUsername(), request.getRemoteAddr())) {
+    		return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build());
+    	}
+
+    	// Password hashing runs on the bounded login executor, the request thread is released until it completes
+    	try {
+    		return loginExecutor.submit(() -> {
+    			try {
+    				authenticate(authRequest.getUsername(), authRequest.getPassword());
+    			} catch (Exception e) {
+    				throw new CompletionException(e);
+    			}
+    			UserDetails userDetails = customUserDetailsService.loadUserByUsername(authRequest.getUsername());
+    			String token = jwtUtil.generateToken(userDetails);
 
-        return ResponseEntity.ok(new JwtResponse(token));
+    			return ResponseEntity.ok(new JwtResponse(token));
+    		});
+    	} catch (RejectedExecutionException e) {
+    		return CompletableFuture.completedFuture(ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    	}
     }
 
     @PostMapping(path = "/logout")
-    public String logout(@RequestHeader(name = "Authorization") String token) {
+    public String logout(@AuthenticationPrincipal JwtPrincipal principal,
+    						@RequestHeader(name = "Authorization") String authorization) {
+    	tokenRevocationStore.revoke(principal.getTokenId(), principal.getExpiration());
+    	// The request is authenticated, so the header holds a valid "Bearer " token
+    	jwtUtil.invalidate(authorization.substring(7));
+    	customUserDetailsService.evictUser(principal.getUsername());
     	return null;
     }
     
     @GetMapping(path = "/me")
-    public String getUsername(@RequestHeader(name = "Authorization") String token) {
-    	token = token.substring(7);
-    	return jwtUtil.getUsernameFromToken(token);
+    public String getUsername(@AuthenticationPrincipal JwtPrincipal principal) {
+    	return principal.getUsername();
     }
 
     private void authenticate(String username, String password) throws Exception {
@@ -61,6 +97,8 @@ public class AuthController {
         } catch (DisabledException e) {
             throw new Exception("USER_DISABLED", e);
         } catch (BadCredentialsException e) {
+            // The password may have changed since the user was cached, the next attempt checks it against the table
+            customUserDetailsService.evictUser(username);
             throw new Exception("INVALID_CREDENTIALS", e);
         }
     }
@@ -0,0 +1,186 @@
+/**
+ * Typed criteria on the entries of the asset_summary table. Every value is bound as a query parameter instead of
+ * being concatenated into the HQL, so that queries are parsed once and their plans reused across calls
+ */
+
+package com.nplab.extension.dao;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+import org.joda.time.DateTime;
+
+public class AssetCriteria {
+	private static final String NOT_IN_ATTRIBUTES =
+			"NOT EXISTS (SELECT m.npNumber FROM AssetNpAttribute m WHERE m.npNumber = a.npNumber)";
+	private static final List<String> EVEN_DIGITS = List.of("0", "2", "4", "6", "8");
+	private static final List<String> ODD_DIGITS = List.of("1", "3", "5", "7", "9");
+
+	private final List<Function<QueryParameters, String>> clauses = new ArrayList<>();
+
+	/**
+	 * @return Criteria met by all entries, to which specifications are added
+	 */
+	public static AssetCriteria all() {
+		return new AssetCriteria();
+	}
+
+	/**
+	 * Entries still being processed, i.e. with no end time
+	 */
+	public AssetCriteria pending() {
+		clauses.add(parameters -> "a.endTime IS NULL");
+		return this;
+	}
+
+	/**
+	 * Entries registered internally or externally, looked up in the indexed asset_np_attribute table. Entries not
+	 * yet added to it, such as cases registered since its last refresh, are matched on their NP number instead
+	 * @param origin The place where case is registered i.e. internal or external
+	 */
+	public AssetCriteria origin(String origin) {
+		String value = origin.equals("internal") ? "internal" : "external";
+		clauses.add(parameters -> "(a.npNumber IN (SELECT n.npNumber FROM AssetNpAttribute n WHERE n.origin = "
+				+ parameters.bind(value) + ") OR (" + NOT_IN_ATTRIBUTES + " AND " + originOf(value, parameters)
+				+ "))");
+		return this;
+	}
+
+	/**
+	 * Entries registered internally or externally with an even or odd NP number, looked up in the indexed
+	 * asset_np_attribute table. Entries not yet added to it are matched on their NP number instead
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 */
+	public AssetCriteria originAndParity(String origin, String parity) {
+		String originValue = origin.equals("internal") ? "internal" : "external";
+		String parityValue = parity.equals("even") ? "even" : "odd";
+		clauses.add(parameters -> "(a.npNumber IN (SELECT n.npNumber FROM AssetNpAttribute n WHERE n.origin = "
+				+ parameters.bind(originValue) + " AND n.parity = " + parameters.bind(parityValue) + ") OR ("
+				+ NOT_IN_ATTRIBUTES + " AND " + originOf(originValue, parameters) + " AND "
+				+ parityOf(parityValue, parameters) + "))");
+		return this;
+	}
+
+	// Origin and parity computed from the NP number as AssetNpAttributeDao.addMissingAttributes does
+	private static String originOf(String origin, QueryParameters parameters) {
+		return "a.npNumber " + (origin.equals("internal") ? "NOT LIKE " : "LIKE ") + parameters.bind("X%");
+	}
+
+	private static String parityOf(String parity, QueryParameters parameters) {
+		return "LOCATE('/', a.npNumber) >= 2 AND SUBSTRING(a.npNumber, LOCATE('/', a.npNumber) - 1, 1) IN ("
+				+ parameters.bind(parity.equals("even") ? EVEN_DIGITS : ODD_DIGITS) + ")";
+	}
+
+	/**
+	 * Entries whose biopsy type contains the given sample type
+	 * @param sampleType Sample type such as Tumor
+	 */
+	public AssetCriteria biopsyType(String sampleType) {
+		clauses.add(parameters -> "a.biopsyType LIKE " + parameters.bind("%" + sampleType + "%"));
+		return this;
+	}
+
+	/**
+	 * Entries registered at or after the given instant
+	 */
+	public AssetCriteria startedOnOrAfter(DateTime time) {
+		clauses.add(parameters -> parameters.bind(time) + " <= a.startTime");
+		return this;
+	}
+
+	/**
+	 * Entries registered strictly after the given instant
+	 */
+	public AssetCriteria startedAfter(DateTime time) {
+		clauses.add(parameters -> parameters.bind(time) + " < a.startTime");
+		return this;
+	}
+
+	/**
+	 * Entries registered at or before the given instant
+	 */
+	public AssetCriteria startedOnOrBefore(DateTime time) {
+		clauses.add(parameters -> "a.startTime <= " + parameters.bind(time));
+		return this;
+	}
+
+	/**
+	 * Entries registered strictly before the given instant
+	 */
+	public AssetCriteria startedBefore(DateTime time) {
+		clauses.add(parameters -> "a.startTime < " + parameters.bind(time));
+		return this;
+	}
+
+	/**
+	 * Entries coming strictly after the given entry in (startTime, npNumber) order, i.e. the entries of the next
+	 * page when paginating by keyset
+	 * @param startTime Start time of the last entry of the previous page
+	 * @param npNumber NP number of the last entry of the previous page
+	 */
+	public AssetCriteria startedAfterKey(DateTime startTime, String npNumber) {
+		clauses.add(parameters -> "(" + parameters.bind(startTime) + " < a.startTime OR (a.startTime = "
+				+ parameters.bind(startTime) + " AND " + parameters.bind(npNumber) + " < a.npNumber))");
+		return this;
+	}
+
+	/**
+	 * Entries being processed at some point of a time interval, i.e. completed at or after its start and
+	 * registered at or before its end
+	 * @param startTime Start of the time interval
+	 * @param endTime End of the time interval
+	 */
+	public AssetCriteria processedDuring(DateTime startTime, DateTime endTime) {
+		clauses.add(parameters -> "a.endTime >= " + parameters.bind(startTime) + " AND a.startTime <= "
+				+ parameters.bind(endTime));
+		return this;
+	}
+
+	/**
+	 * Entries whose TAT lies in the given range, both ends included
+	 */
+	public AssetCriteria tatBetween(int tatStart, int tatEnd) {
+		clauses.add(parameters -> parameters.bind(tatStart) + " <= a.tat AND a.tat <= " + parameters.bind(tatEnd));
+		return this;
+	}
+
+	/**
+	 * Entries having the given special request/test
+	 * @param request Request flag property of AssetSummary, one of AssetSummaryDao.REQUEST_FLAGS
+	 */
+	public AssetCriteria hasRequest(String request) {
+		// The property name is part of the query text, so only the known flags are accepted
+		if (!AssetSummaryDao.REQUEST_FLAGS.contains(request)) {
+			throw new IllegalArgumentException("Unknown request " + request);
+		}
+		clauses.add(parameters -> "a." + request + " = true");
+		return this;
+	}
+
+	/**
+	 * Entries having a TAT, i.e. completed entries
+	 */
+	public AssetCriteria hasTat() {
+		clauses.add(parameters -> "a.tat IS NOT NULL");
+		return this;
+	}
+
+	/**
+	 * Renders the criteria as an HQL condition on the alias a, binding its values to the given parameters
+	 * @param parameters Parameters of the query the condition is part of
+	 * @return Condition in HQL syntax
+	 */
+	String toHql(QueryParameters parameters) {
+		if (clauses.isEmpty()) {
+			return "1 = 1";
+		}
+
+		StringBuilder hql = new StringBuilder();
+		for (Function<QueryParameters, String> clause : clauses) {
+			hql.append(hql.length() == 0 ? "" : " AND ").append(clause.apply(parameters));
+		}
+		return hql.toString();
+	}
+}
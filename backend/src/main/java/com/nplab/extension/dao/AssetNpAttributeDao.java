@@ -0,0 +1,53 @@
+/**
+ * Repository for maintaining the asset_np_attribute side table in TrackerDb
+ */
+
+package com.nplab.extension.dao;
+
+import java.sql.Timestamp;
+
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+
+import org.joda.time.DateTime;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+@Repository
+public class AssetNpAttributeDao {
+	private EntityManager entityManager;
+
+	@Autowired
+	public AssetNpAttributeDao(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Adds the origin and parity of the NP numbers in asset_summary which are not yet in asset_np_attribute.
+	 * Parity is taken from the digit just before the first '/' of the NP number, as in 1234/21
+	 * @param since (DateTime): Only assets registered at or after this instant are looked at, or all assets if null
+	 * @return Number of NP numbers added
+	 */
+	@Transactional
+	public int addMissingAttributes(DateTime since) {
+		String digit = "SUBSTRING(s.np_number, LOCATE('/', s.np_number) - 1, 1)";
+		Query query = entityManager
+				.createNativeQuery(
+					"INSERT IGNORE INTO asset_np_attribute (np_number, origin, parity) " +
+					"SELECT s.np_number, " +
+					"CASE WHEN s.np_number LIKE 'X%' THEN 'external' ELSE 'internal' END, " +
+					"CASE WHEN LOCATE('/', s.np_number) < 2 THEN 'none' " +
+					"WHEN " + digit + " IN ('0', '2', '4', '6', '8') THEN 'even' " +
+					"WHEN " + digit + " IN ('1', '3', '5', '7', '9') THEN 'odd' ELSE 'none' END " +
+					"FROM asset_summary s LEFT JOIN asset_np_attribute n ON n.np_number = s.np_number " +
+					"WHERE n.np_number IS NULL" + ((since == null) ? "" : " AND s.start_time >= :since")
+				);
+		if (since != null) {
+			query.setParameter("since", new Timestamp(since.getMillis()));
+		}
+
+		return query.executeUpdate();
+	}
+
+}
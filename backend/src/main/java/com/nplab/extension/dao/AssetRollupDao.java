@@ -0,0 +1,286 @@
+/**
+ * Repository for maintaining and querying the asset_daily_rollup and asset_completed_rollup tables in TrackerDb.
+ * The rollups have day granularity: a case is counted on the day it was registered and the day it was completed,
+ * whatever the time of day
+ * @see com.nplab.extension.db.AssetDailyRollup
+ * @see com.nplab.extension.db.AssetCompletedRollup
+ */
+
+package com.nplab.extension.dao;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import javax.persistence.EntityManager;
+
+import org.hibernate.query.Query;
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nplab.extension.db.DailyCount;
+import com.nplab.extension.db.RequestCount;
+
+@Repository
+public class AssetRollupDao {
+	private static final String STATE_NAME = "asset_daily_rollup";
+	// Inserts of the rollups, completed with further conditions on the cases. Cases without a start time have no
+	// day to be registered on, pending cases none to be completed on
+	private static final String REGISTRATIONS_INSERT =
+			"INSERT INTO asset_daily_rollup (start_day, origin, biopsy_type, case_count) " +
+			"SELECT DATE(s.start_time), CASE WHEN s.np_number LIKE 'X%%' THEN 'external' ELSE 'internal' END, " +
+			"s.biopsy_type, COUNT(*) FROM asset_summary s WHERE s.start_time IS NOT NULL %s" +
+			"GROUP BY DATE(s.start_time), CASE WHEN s.np_number LIKE 'X%%' THEN 'external' ELSE 'internal' END, " +
+			"s.biopsy_type";
+	private static final String COMPLETIONS_INSERT =
+			"INSERT INTO asset_completed_rollup (end_day, biopsy_type, request_code, tat, case_count) " +
+			"SELECT DATE(s.end_time), s.biopsy_type, s.request_code, s.TAT, COUNT(*) FROM asset_summary s " +
+			"WHERE s.end_time IS NOT NULL %s" +
+			"GROUP BY DATE(s.end_time), s.biopsy_type, s.request_code, s.TAT";
+
+	private EntityManager entityManager;
+
+	@Autowired
+	public AssetRollupDao(EntityManager entityManager) {
+		this.entityManager = entityManager;
+	}
+
+	/**
+	 * Recomputes the registrations of every day having a case registered since the high-water mark, and the
+	 * completions of every day having a case completed since then, or all days of both if there is no high-water
+	 * mark yet or a rebuild is asked for, and moves the high-water mark to the given instant
+	 * @param refreshStart (DateTime): Instant the refresh started, which becomes the high-water mark
+	 * @param margin (int): Days before the high-water mark also looked at, for cases committed late
+	 * @param rebuild (boolean): true to recompute all days, dropping the cases no longer in asset_summary
+	 * @return Number of days recomputed, -1 if all of them were
+	 */
+	@Transactional
+	public int refresh(DateTime refreshStart, int margin, boolean rebuild) {
+		@SuppressWarnings("unchecked")
+		List<Object> marks = entityManager
+				.createNativeQuery("SELECT high_water_mark FROM asset_rollup_state WHERE name = :name")
+				.setParameter("name", STATE_NAME)
+				.getResultList();
+
+		int recomputed;
+		if (rebuild || marks.isEmpty()) {
+			entityManager.createNativeQuery("DELETE FROM asset_daily_rollup").executeUpdate();
+			entityManager.createNativeQuery(String.format(REGISTRATIONS_INSERT, "")).executeUpdate();
+			entityManager.createNativeQuery("DELETE FROM asset_completed_rollup").executeUpdate();
+			entityManager.createNativeQuery(String.format(COMPLETIONS_INSERT, "")).executeUpdate();
+			recomputed = -1;
+		} else {
+			DateTime since = new DateTime(marks.get(0)).minusDays(margin);
+			recomputed = recompute("asset_daily_rollup", "start_day", "start_time", REGISTRATIONS_INSERT, since)
+					+ recompute("asset_completed_rollup", "end_day", "end_time", COMPLETIONS_INSERT, since);
+		}
+
+		entityManager
+				.createNativeQuery(
+					"INSERT INTO asset_rollup_state (name, high_water_mark) VALUES (:name, :mark) " +
+					"ON DUPLICATE KEY UPDATE high_water_mark = VALUES(high_water_mark)"
+				)
+				.setParameter("name", STATE_NAME)
+				.setParameter("mark", new Timestamp(refreshStart.getMillis()))
+				.executeUpdate();
+
+		return recomputed;
+	}
+
+	// Recomputes the days of a rollup having a case with its time at or after an instant
+	private int recompute(String rollup, String dayColumn, String timeColumn, String insert, DateTime since) {
+		@SuppressWarnings("unchecked")
+		List<Object> touched = entityManager
+				.createNativeQuery(
+					"SELECT DISTINCT DATE(s." + timeColumn + ") FROM asset_summary s WHERE s." + timeColumn + " >= :since"
+				)
+				.setParameter("since", new Timestamp(since.getMillis()))
+				.getResultList();
+
+		List<Date> days = new ArrayList<>();
+		for (Object day : touched) {
+			// new LocalDate(null) would be today
+			if (day == null) {
+				continue;
+			}
+			days.add(Date.valueOf(new LocalDate(day).toString()));
+		}
+		if (days.isEmpty()) {
+			return 0;
+		}
+
+		entityManager.createNativeQuery("DELETE FROM " + rollup + " WHERE " + dayColumn + " IN (:days)")
+				.setParameter("days", days)
+				.executeUpdate();
+		// The range on the time lets the view use its index, the day list keeps only the touched days
+		LocalDate first = new LocalDate(days.stream().min(Date::compareTo).get());
+		LocalDate last = new LocalDate(days.stream().max(Date::compareTo).get());
+		entityManager.createNativeQuery(String.format(insert, "AND s." + timeColumn + " >= :first AND s." + timeColumn +
+				" < :last AND DATE(s." + timeColumn + ") IN (:days) "))
+				.setParameter("first", new Timestamp(first.toDateTimeAtStartOfDay().getMillis()))
+				.setParameter("last", new Timestamp(last.plusDays(1).toDateTimeAtStartOfDay().getMillis()))
+				.setParameter("days", days)
+				.executeUpdate();
+		return days.size();
+	}
+
+	/**
+	 * Checks that the rollups count as many registered and completed cases as asset_summary holds, which they
+	 * stop doing when cases are removed
+	 * @return true if both counts add up
+	 */
+	public boolean countsMatch() {
+		Object[] cases = (Object[]) entityManager
+				.createNativeQuery("SELECT COUNT(s.start_time), COUNT(s.end_time) FROM asset_summary s")
+				.getSingleResult();
+		Object registered = entityManager
+				.createNativeQuery("SELECT COALESCE(SUM(case_count), 0) FROM asset_daily_rollup")
+				.getSingleResult();
+		Object completed = entityManager
+				.createNativeQuery("SELECT COALESCE(SUM(case_count), 0) FROM asset_completed_rollup")
+				.getSingleResult();
+
+		return ((Number) cases[0]).longValue() == ((Number) registered).longValue()
+				&& ((Number) cases[1]).longValue() == ((Number) completed).longValue();
+	}
+
+	/**
+	 * Counts the internal and external cases registered on each day of a time interval
+	 * @param from (DateTime): Start of the first day of the time interval
+	 * @param to (DateTime): Start of the day after the last day of the time interval
+	 * @return List of DailyCount objects, one for every day having at least one case registered
+	 */
+	public List<DailyCount> countDailyByOrigin(DateTime from, DateTime to) {
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT r.startDay, SUM(r.caseCount), SUM(CASE WHEN r.origin = 'external' THEN r.caseCount ELSE 0 END) " +
+					"FROM AssetDailyRollup r WHERE r.startDay >= :from AND r.startDay < :to GROUP BY r.startDay"
+					);
+		query.setParameter("from", from.toLocalDate());
+		query.setParameter("to", to.toLocalDate());
+
+		List<DailyCount> dailyCounts = new ArrayList<>();
+		for (Object[] row : query.getResultList()) {
+			long total = ((Number) row[1]).longValue();
+			long external = (row[2] == null) ? 0 : ((Number) row[2]).longValue();
+			dailyCounts.add(new DailyCount(row[0].toString(), total - external, external));
+		}
+
+		return dailyCounts;
+	}
+
+	/**
+	 * Counts the cases registered from the day of one instant to the day before another, which is what
+	 * startTime >= from AND startTime <= to means at day granularity when both are at the start of a day
+	 * @param from (DateTime): Start of the first day cases are counted on
+	 * @param to (DateTime): Start of the day after the last day cases are counted on
+	 * @return Number of cases registered on those days
+	 */
+	public long countStartedBetween(DateTime from, DateTime to) {
+		@SuppressWarnings("unchecked")
+		Query<Long> query = (Query<Long>) entityManager
+				.createQuery("SELECT SUM(r.caseCount) FROM AssetDailyRollup r WHERE r.startDay >= :from AND r.startDay < :to");
+		query.setParameter("from", from.toLocalDate());
+		query.setParameter("to", to.toLocalDate());
+
+		Long count = query.getSingleResult();
+		return (count == null) ? 0 : count;
+	}
+
+	/**
+	 * Counts the cases completed during a time interval for each of the given biopsy types in a single query
+	 * @param sampleTypes (List of String): Sample types contained in the biopsy type of the cases counted for each
+	 * @param startTime (DateTime): Start of the first day of the time interval
+	 * @param endTime (DateTime): Start of the last day of the time interval
+	 * @return List of counts of cases of each sample type, in the order of the sample types
+	 */
+	public List<Long> countByBiopsyTypes(List<String> sampleTypes, DateTime startTime, DateTime endTime) {
+		List<Long> counts = new ArrayList<>();
+		if (sampleTypes.isEmpty()) {
+			return counts;
+		}
+
+		QueryParameters parameters = new QueryParameters();
+		StringBuilder sums = new StringBuilder();
+		for (String sampleType : sampleTypes) {
+			sums.append(sums.length() == 0 ? "" : ", ").append("SUM(CASE WHEN r.biopsyType LIKE ")
+				.append(parameters.bind("%" + sampleType + "%")).append(" THEN r.caseCount ELSE 0 END)");
+		}
+		Query<?> query = (Query<?>) entityManager
+				.createQuery(
+					"SELECT " + sums + " FROM AssetCompletedRollup r WHERE " + completedDuring(startTime, endTime, parameters)
+					);
+
+		// A single selected column comes back as a scalar rather than a row
+		Object result = parameters.applyTo(query).getSingleResult();
+		Object[] row = (sampleTypes.size() == 1) ? new Object[] { result } : (Object[]) result;
+		for (Object sum : row) {
+			counts.add(sum == null ? 0L : ((Number) sum).longValue());
+		}
+
+		return counts;
+	}
+
+	/**
+	 * @param sampleType (String): Sample type contained in the biopsy type of the cases
+	 * @param startTime (DateTime): Start of the first day of the time interval the cases were completed during
+	 * @param endTime (DateTime): Start of the last day of the time interval the cases were completed during
+	 * @return Number of cases having each TAT value, ordered by TAT
+	 */
+	public SortedMap<Integer, Long> findTatHistogram(String sampleType, DateTime startTime, DateTime endTime) {
+		QueryParameters parameters = new QueryParameters();
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT r.tat, SUM(r.caseCount) FROM AssetCompletedRollup r WHERE r.tat IS NOT NULL AND " +
+					completedDuring(startTime, endTime, parameters) + " AND r.biopsyType LIKE " +
+					parameters.bind("%" + sampleType + "%") + " GROUP BY r.tat"
+					);
+
+		SortedMap<Integer, Long> histogram = new TreeMap<>();
+		for (Object[] row : parameters.applyTo(query).getResultList()) {
+			histogram.put(((Number) row[0]).intValue(), ((Number) row[1]).longValue());
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * @param sampleType (String): Sample type contained in the biopsy type of the cases
+	 * @param tatStart (int): Smallest TAT of the cases
+	 * @param tatEnd (int): Largest TAT of the cases
+	 * @param startTime (DateTime): Start of the first day of the time interval the cases were completed during
+	 * @param endTime (DateTime): Start of the last day of the time interval the cases were completed during
+	 * @return List of RequestCount objects containing the name of request and the number of cases having it
+	 */
+	public List<RequestCount> findCountByRequestType(String sampleType, int tatStart, int tatEnd, DateTime startTime,
+			DateTime endTime) {
+		QueryParameters parameters = new QueryParameters();
+		@SuppressWarnings("unchecked")
+		Query<RequestCount> query = (Query<RequestCount>) entityManager
+				.createQuery(
+					"SELECT NEW com.nplab.extension.db.RequestCount(r.requestCode, SUM(r.caseCount)) " +
+					"FROM AssetCompletedRollup r WHERE " + completedDuring(startTime, endTime, parameters) +
+					" AND r.biopsyType LIKE " + parameters.bind("%" + sampleType + "%") +
+					" AND " + parameters.bind(tatStart) + " <= r.tat AND r.tat <= " + parameters.bind(tatEnd) +
+					" GROUP BY r.requestCode"
+				);
+
+		return parameters.applyTo(query).getResultList();
+	}
+
+	// Completed from the first day to the last day, both included. Unlike AssetCriteria.processedDuring, cases still
+	// in progress at the end of the interval are not counted, the rollup not knowing both days of a case
+	private static String completedDuring(DateTime startTime, DateTime endTime, QueryParameters parameters) {
+		return "r.endDay >= " + parameters.bind(startTime.toLocalDate()) + " AND r.endDay <= "
+				+ parameters.bind(endTime.toLocalDate());
+	}
+
+}
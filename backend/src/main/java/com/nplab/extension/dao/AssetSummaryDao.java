@@ -5,139 +5,334 @@
 
 package com.nplab.extension.dao;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Consumer;
 import javax.persistence.EntityManager;
 
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.query.Query;
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import com.nplab.extension.db.AssetSummary;
+import com.nplab.extension.db.ColumnStats;
+import com.nplab.extension.db.DailyCount;
+import com.nplab.extension.db.DataVersion;
 import com.nplab.extension.db.PendingAsset;
 import com.nplab.extension.db.RequestCount;
 
 @Repository
 public class AssetSummaryDao {
+	/**
+	 * Request flag properties of AssetSummary, in the order of the characters of request_code
+	 */
+	public static final List<String> REQUEST_FLAGS = List.of("specialStains", "ihc", "processAll", "deeper", "decal",
+			"keptForFixation", "em", "semithin", "ehc");
+
 	private EntityManager entityManager;
-	
+	// Rows fetched at a time when streaming, Integer.MIN_VALUE makes MySQL Connector/J stream rows one by one
+	private int streamFetchSize;
+
 	@Autowired
-	public AssetSummaryDao(EntityManager entityManager) {
+	public AssetSummaryDao(EntityManager entityManager,
+			@Value("${dashboard.pending.stream-fetch-size:-2147483648}") int streamFetchSize) {
 		this.entityManager = entityManager;
+		this.streamFetchSize = streamFetchSize;
 	}
 
 	/**
-	 *
-	 * @param stat (String): The column name in the table where maximum value is to be found
-	 * @param criteria (String): Specification for particular entries (such as endTime not being null) from where maximum value is to be found
-	 *                 in HQL syntax
-	 * @return Maximum value in the stat column from all rows meeting the criteria
+	 * Finds the mean, maximum, minimum, count and standard deviation of a column with a single query
+	 * @param stat (String): The column name in the table which is to be aggregated. It is part of the query
+	 *             text, so it must never come from user input
+	 * @param criteria (AssetCriteria): Specification for particular entries (such as endTime not being null) which are aggregated
+	 * @return ColumnStats of the stat column over all rows meeting the criteria, all zero when no row meets them
 	 */
-	public int findMax(String stat, String criteria) {
+	public ColumnStats findColumnStats(String stat, AssetCriteria criteria) {
+		QueryParameters parameters = new QueryParameters();
 		@SuppressWarnings("unchecked")
-		Query<Integer> statQuery = (Query<Integer>) entityManager.createQuery(
-				"select max(a." + stat + ") from AssetSummary a where " + criteria 
+		Query<Object[]> statQuery = (Query<Object[]>) entityManager.createQuery(
+				"select avg(a." + stat + "), max(a." + stat + "), min(a." + stat + "), count(a." + stat + "), " +
+				"stddev(a." + stat + ") from AssetSummary a where " + criteria.toHql(parameters)
 			);
 
-		if (statQuery.getResultList().get(0) == null) {
-			return 0;
-		}
+		Object[] row = parameters.applyTo(statQuery).getSingleResult();
+		return new ColumnStats(toDouble(row[0]), (int) toDouble(row[1]), (int) toDouble(row[2]),
+				(long) toDouble(row[3]), toDouble(row[4]));
+	}
 
-		return statQuery.getResultList().get(0);
+	private static double toDouble(Object aggregate) {
+		return (aggregate == null) ? 0 : ((Number) aggregate).doubleValue();
 	}
 
 	/**
 	 *
-	 * @param stat (String): The column name in the table whose mean has to be found
-	 * @param criteria (String): Specification for particular entries (such as endTime not being null) whose mean is to be found in HQL syntax
-	 * @return Mean of the stat column of all rows meeting the criteria
+	 * @param criteria (AssetCriteria): Specifications of the type of entries (such as endTime being null for pending) in the table to be counted
+	 * @return Count of entries meeting the criteria
 	 */
-	public double findMean(String stat, String criteria) {
+	public long countByCriteria(AssetCriteria criteria) {
+		QueryParameters parameters = new QueryParameters();
 		@SuppressWarnings("unchecked")
-		Query<Double> statQuery = (Query<Double>) entityManager.createQuery(
-				"select avg(a."+ stat + ") from AssetSummary a where " + criteria
-			);
+		Query<Long> query = (Query<Long>) entityManager
+				.createQuery(
+					"SELECT COUNT(a.npNumber) FROM AssetSummary a WHERE " + criteria.toHql(parameters)
+					);
 
-		if (statQuery.getResultList().get(0) == null) {
-			return 0;
-		}
-		return statQuery.getResultList().get(0);
+		return parameters.applyTo(query).getResultList().get(0);
 	}
 
 	/**
-	 *
-	 * @param criteria (String): Specifications of the type of entries (such as endTime being null for pending) in the table to be counted, in HQL syntax
-	 * @return Count of entries meeting the criteria
+	 * Counts the entries falling in each of the given buckets in a single pass over the table, instead of
+	 * one COUNT query per bucket
+	 * @param buckets (List of AssetCriteria): Specification of each bucket (such as a startTime range)
+	 * @param criteria (AssetCriteria): Specifications common to all buckets (such as endTime being null for pending)
+	 * @return List of counts of entries meeting the criteria and lying in each bucket, in the order of the buckets
 	 */
-	public long countByCriteria(String criteria) {
-		@SuppressWarnings("unchecked")
-		Query<Long> query = (Query<Long>) entityManager
+	public List<Long> countByBuckets(List<AssetCriteria> buckets, AssetCriteria criteria) {
+		List<Long> counts = new ArrayList<>();
+		if (buckets.isEmpty()) {
+			return counts;
+		}
+
+		QueryParameters parameters = new QueryParameters();
+		StringBuilder sums = new StringBuilder();
+		for (AssetCriteria bucket : buckets) {
+			sums.append(sums.length() == 0 ? "" : ", ")
+				.append("SUM(CASE WHEN ").append(bucket.toHql(parameters)).append(" THEN 1 ELSE 0 END)");
+		}
+		Query<?> query = (Query<?>) entityManager
 				.createQuery(
-					"SELECT COUNT(a.npNumber) FROM AssetSummary a WHERE " + criteria
+					"SELECT " + sums + " FROM AssetSummary a WHERE " + criteria.toHql(parameters)
 					);
 
-		return query.getResultList().get(0);
+		// A single selected column comes back as a scalar rather than a row
+		Object result = parameters.applyTo(query).getSingleResult();
+		Object[] row = (buckets.size() == 1) ? new Object[] { result } : (Object[]) result;
+		for (Object sum : row) {
+			counts.add(sum == null ? 0L : ((Number) sum).longValue());
+		}
+
+		return counts;
 	}
 
 	/**
-	 *
-	 * @param criteria (String): Specifications of the type of entries (such as biopsy_types) in the table to be counted, in HQL syntax
-	 * @param startTime (String): Starting date of the time interval in which entries are counted in the form YYYY-MM-DD
-	 * @param endTime (String): Ending date of the time interval in which entries are counted in the form YYYY-MM-DD
-	 * @return Count of all entries being processed in a time interval and meeting the criteria passed
+	 * Finds the latest start and end time and the number of rows of the table, which together change whenever a
+	 * case is registered, completed or removed
+	 * @return DataVersion of the table, with times in milliseconds and 0 for a time when there is no such row
 	 */
-	public long countByDateAndCriteria(String criteria, String startTime, String endTime) {
+	public DataVersion findDataVersion() {
 		@SuppressWarnings("unchecked")
-		Query<Long> query = (Query<Long>) entityManager
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery("SELECT MAX(a.startTime), MAX(a.endTime), COUNT(a) FROM AssetSummary a");
+
+		Object[] row = query.getSingleResult();
+		return new DataVersion(toMillis(row[0]), toMillis(row[1]), ((Number) row[2]).longValue());
+	}
+
+	private static long toMillis(Object time) {
+		return (time == null) ? 0 : ((DateTime) time).getMillis();
+	}
+
+	/**
+	 * Counts the internal and external cases registered on each day of a time interval with a single grouped query
+	 * @param from (DateTime): Start of the first day of the time interval
+	 * @param to (DateTime): Start of the day after the last day of the time interval
+	 * @return List of DailyCount objects, one for every day having at least one case registered
+	 */
+	public List<DailyCount> countDailyByOrigin(DateTime from, DateTime to) {
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
 				.createQuery(
-					"SELECT COUNT(a) FROM AssetSummary a WHERE " + criteria +
-					" AND a.endTime >= '" + startTime + "' AND a.startTime <= '" + endTime + "'"
+					"SELECT date(a.startTime), COUNT(a), SUM(CASE WHEN a.npNumber LIKE 'X%' THEN 1 ELSE 0 END) " +
+					"FROM AssetSummary a WHERE a.startTime >= :from AND a.startTime < :to " +
+					"GROUP BY date(a.startTime)"
 					);
-		
-		return query.getResultList().get(0);
+		query.setParameter("from", from);
+		query.setParameter("to", to);
+
+		List<DailyCount> dailyCounts = new ArrayList<>();
+		for (Object[] row : query.getResultList()) {
+			long total = ((Number) row[1]).longValue();
+			long external = (row[2] == null) ? 0 : ((Number) row[2]).longValue();
+			dailyCounts.add(new DailyCount(row[0].toString(), total - external, external));
+		}
+
+		return dailyCounts;
 	}
 
 	/**
 	 *
-	 * @param criteria (String) Specifications for entries (such as biopsy_type, tat range) which have
-	 *                    to be grouped by special request types in HQL syntax
-	 * @param startTime (String) Starting date in the time interval, where assets are grouped
-	 *                     by special_requests in the form YYYY-MM-DD
-	 * @param endTime (String) Ending date in the time interval, where assets are grouped
-	 * 	 *                     by special_requests in the form YYYY-MM-DD
+	 * @param criteria (AssetCriteria) Specifications for entries (such as biopsy_type, tat range, processing interval) which have
+	 *                    to be grouped by special request types
 	 * @return List of RequestCount objects containing the name of request and the number of entries
 	 *     having that request type. Eg: {requestType = "IHC + Decal", count = 23}
 	 */
-	public List<RequestCount> findCountByRequestType(String criteria, String startTime, String endTime) {
+	public List<RequestCount> findCountByRequestType(AssetCriteria criteria) {
+		QueryParameters parameters = new QueryParameters();
 		@SuppressWarnings("unchecked")
 			Query<RequestCount> query = (Query<RequestCount>) entityManager
 			.createQuery(
 				"SELECT NEW com.nplab.extension.db.RequestCount(a.requestCode, COUNT(a)) " +
-				"FROM AssetSummary a WHERE " + 
-				"a.endTime >= '" +  startTime + "'" + " AND a.startTime <= '" + endTime +  
-				"' AND " + criteria
+				"FROM AssetSummary a WHERE " + criteria.toHql(parameters) + " GROUP BY a.requestCode"
 			);
-						
-			return query.getResultList();
+
+			return parameters.applyTo(query).getResultList();
+	}
+
+	/**
+	 *
+	 * @param criteria (AssetCriteria) Specifications for entries (such as biopsy_type, processing interval) whose TAT is to be counted
+	 * @return Number of entries having each TAT value, ordered by TAT
+	 */
+	public SortedMap<Integer, Long> findTatHistogram(AssetCriteria criteria) {
+		QueryParameters parameters = new QueryParameters();
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT a.tat, COUNT(a) FROM AssetSummary a WHERE a.tat IS NOT NULL AND " + criteria.toHql(parameters) +
+					" GROUP BY a.tat"
+					);
+
+		SortedMap<Integer, Long> histogram = new TreeMap<>();
+		for (Object[] row : parameters.applyTo(query).getResultList()) {
+			histogram.put(((Number) row[0]).intValue(), ((Number) row[1]).longValue());
+		}
+
+		return histogram;
 	}
 
 	/**
-	 * @param criteria (String) Specifications for entries (such as tatRange)
+	 * @param criteria (AssetCriteria) Specifications for entries (such as origin)
 	 * @returns List of PendingAsset objects each containing the npNumber, biopsyType and startTime
 	 */
-	public List<PendingAsset> findPendingAssets(String criteria) {
-		String lowLimit = (new DateTime()).minusDays(90).toString().substring(0, 10);
-		String upLimit = (new DateTime()).toString().substring(0, 10);
-//		System.out.println(currentTime);
+	public List<PendingAsset> findPendingAssets(AssetCriteria criteria) {
+		return findPendingAssets(criteria, 0);
+	}
+
+	/**
+	 * @param criteria (AssetCriteria) Specifications for entries (such as origin, or coming after a page key)
+	 * @param maxResults (int) Maximum number of entries returned, all of them if 0
+	 * @returns List of PendingAsset objects each containing the npNumber, biopsyType and startTime, ordered by
+	 *     startTime and npNumber
+	 */
+	public List<PendingAsset> findPendingAssets(AssetCriteria criteria, int maxResults) {
+		QueryParameters parameters = new QueryParameters();
 		@SuppressWarnings("unchecked")
 		Query<PendingAsset> query = (Query<PendingAsset>) entityManager
 				.createQuery(
 					"SELECT NEW com.nplab.extension.db.PendingAsset(a.npNumber, a.biopsyType, a.startTime) " +
-					"FROM AssetSummary a WHERE a.endTime IS NULL AND a.startTime >= '" + lowLimit + "' AND a.startTime < '" + upLimit + "'" + criteria + " ORDER BY a.startTime ASC"
+					pendingAssetsHql(criteria, parameters)
+				);
+		if (maxResults > 0) {
+			query.setMaxResults(maxResults);
+		}
+
+		return parameters.applyTo(query).getResultList();
+	}
+
+	/**
+	 * Finds the pending entries registered at or after an instant, whenever that is, unlike findPendingAssets
+	 * @param since (DateTime): Instant from which pending entries are read
+	 * @returns List of PendingAsset objects each containing the npNumber, biopsyType and startTime, ordered by
+	 *     startTime and npNumber
+	 */
+	public List<PendingAsset> findPendingAssetsStartedSince(DateTime since) {
+		@SuppressWarnings("unchecked")
+		Query<PendingAsset> query = (Query<PendingAsset>) entityManager
+				.createQuery(
+					"SELECT NEW com.nplab.extension.db.PendingAsset(a.npNumber, a.biopsyType, a.startTime) " +
+					"FROM AssetSummary a WHERE a.endTime IS NULL AND a.startTime >= :since " +
+					"ORDER BY a.startTime ASC, a.npNumber ASC"
+				);
+		query.setParameter("since", since);
+
+		return query.getResultList();
+	}
+
+	/**
+	 * Finds the entries completed at or after an instant
+	 * @param since (DateTime): Instant from which completed entries are read
+	 * @return List of arrays of the npNumber and endTime of each entry, ordered by endTime
+	 */
+	public List<Object[]> findCompletedSince(DateTime since) {
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT a.npNumber, a.endTime FROM AssetSummary a WHERE a.endTime >= :since ORDER BY a.endTime ASC"
 				);
+		query.setParameter("since", since);
 
-//		System.out.println(query.getResultList().size());
 		return query.getResultList();
 	}
 
+	/**
+	 * Reads the pending assets one at a time from a forward-only cursor, so that they are never all held in memory
+	 * @param criteria (AssetCriteria) Specifications for entries (such as origin)
+	 * @param consumer Consumer called with each PendingAsset, in startTime and npNumber order
+	 */
+	@Transactional(readOnly = true)
+	public void streamPendingAssets(AssetCriteria criteria, Consumer<PendingAsset> consumer) {
+		QueryParameters parameters = new QueryParameters();
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT a.npNumber, a.biopsyType, a.startTime " + pendingAssetsHql(criteria, parameters)
+				);
+		query.setFetchSize(streamFetchSize);
+		query.setReadOnly(true);
+
+		try (ScrollableResults results = parameters.applyTo(query).scroll(ScrollMode.FORWARD_ONLY)) {
+			while (results.next()) {
+				Object[] row = results.get();
+				consumer.accept(new PendingAsset((String) row[0], (String) row[1], (DateTime) row[2]));
+			}
+		}
+	}
+
+	/**
+	 * Reads the entries registered or completed at or after an instant one at a time from a forward-only cursor,
+	 * so that all of them can be read without holding them in memory as entities
+	 * @param since (DateTime): Instant from which entries are read, or null for all entries
+	 * @param consumer Consumer called with each entry as an array of its npNumber, biopsyType, startTime, endTime,
+	 *     tat and requestCode followed by its request flags in the order of REQUEST_FLAGS
+	 */
+	@Transactional(readOnly = true)
+	public void streamAssets(DateTime since, Consumer<Object[]> consumer) {
+		StringBuilder columns = new StringBuilder("a.npNumber, a.biopsyType, a.startTime, a.endTime, a.tat, a.requestCode");
+		for (String flag : REQUEST_FLAGS) {
+			columns.append(", a.").append(flag);
+		}
+		@SuppressWarnings("unchecked")
+		Query<Object[]> query = (Query<Object[]>) entityManager
+				.createQuery(
+					"SELECT " + columns + " FROM AssetSummary a" +
+					((since == null) ? "" : " WHERE a.startTime >= :since OR a.endTime >= :since")
+				);
+		if (since != null) {
+			query.setParameter("since", since);
+		}
+		query.setFetchSize(streamFetchSize);
+		query.setReadOnly(true);
+
+		try (ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY)) {
+			while (results.next()) {
+				consumer.accept(results.get());
+			}
+		}
+	}
+
+	// Pending assets registered in the 90 days before today, in a stable order for pagination
+	private static String pendingAssetsHql(AssetCriteria criteria, QueryParameters parameters) {
+		DateTime today = new DateTime().withTimeAtStartOfDay();
+		return "FROM AssetSummary a WHERE a.endTime IS NULL AND " +
+				AssetCriteria.all().startedOnOrAfter(today.minusDays(90)).startedBefore(today).toHql(parameters) +
+				" AND " + criteria.toHql(parameters) + " ORDER BY a.startTime ASC, a.npNumber ASC";
+	}
+
 }
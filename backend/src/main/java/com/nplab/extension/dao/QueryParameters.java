@@ -0,0 +1,38 @@
+/**
+ * Collects the values bound to the named parameters of one HQL query. Parameters are named in the order they
+ * are bound, so criteria of the same shape always render the same query text and reuse its cached plan
+ */
+
+package com.nplab.extension.dao;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.persistence.Query;
+
+class QueryParameters {
+	private final Map<String, Object> values = new LinkedHashMap<>();
+
+	/**
+	 * Binds a value to a new parameter
+	 * @param value Value of the parameter
+	 * @return Placeholder of the parameter to be used in the HQL query
+	 */
+	String bind(Object value) {
+		String name = "p" + values.size();
+		values.put(name, value);
+		return ":" + name;
+	}
+
+	/**
+	 * Sets all bound values on a query created from HQL using the placeholders of this object
+	 * @param query Query to set the parameters on
+	 * @return The same query
+	 */
+	<Q extends Query> Q applyTo(Q query) {
+		for (Map.Entry<String, Object> value : values.entrySet()) {
+			query.setParameter(value.getKey(), value.getValue());
+		}
+		return query;
+	}
+}
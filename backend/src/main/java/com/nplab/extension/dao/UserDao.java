@@ -26,13 +26,14 @@ public class UserDao {
 	/**
 	 * Finds a user with the given username
 	 * @param username Username of the user to be searched
-	 * @return User having the same username as passed
+	 * @return User having the same username as passed, null if there is no such user
+	 * @throws org.hibernate.NonUniqueResultException If more than one user has the username
 	 */
 	public User findByUsername(String username) {
-		Query<User> userQuery = (Query<User>) entityManager
-				.createQuery("select u from User u where u.username = :username");
+		// The named query is parsed once when the persistence unit starts
+		Query<User> userQuery = (Query<User>) entityManager.createNamedQuery("User.findByUsername", User.class);
 		userQuery.setParameter("username", username);
-		return userQuery.getResultList().get(0);
+		return userQuery.uniqueResult();
 	}
 
 }
@@ -0,0 +1,41 @@
+/**
+ * Configuration of the cache in front of SampleStatsService. The caches themselves (Caffeine, bounded and
+ * expiring) are set up from the spring.cache properties
+ */
+
+package com.nplab.extension.dashboard;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.cache.interceptor.SimpleKey;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class DashboardCacheConfiguration {
+
+	/**
+	 * Dashboard results depend on the current time (e.g. pending cases in the last n days), so keys include the
+	 * current time truncated to the configured resolution. Identical requests within the same window share one
+	 * entry, and no entry outlives the window it was computed in. The method is part of the key too, as methods
+	 * such as the overloads of findPendingAssetsBreakout share a cache
+	 * @param resolutionSeconds Width of the time window in seconds
+	 * @return KeyGenerator combining the method, the time window and the method arguments
+	 */
+	@Bean
+	public KeyGenerator dashboardCacheKeyGenerator(
+			@Value("${dashboard.cache.key-resolution-seconds:60}") long resolutionSeconds) {
+		long resolutionMillis = resolutionSeconds * 1000;
+		return (target, method, params) -> {
+			Object[] key = new Object[params.length + 2];
+			// The Method itself rather than its name, which overloads have in common
+			key[0] = method;
+			System.arraycopy(params, 0, key, 1, params.length);
+			key[params.length + 1] = System.currentTimeMillis() / resolutionMillis;
+			return new SimpleKey(key);
+		};
+	}
+
+}
@@ -8,17 +8,16 @@ package com.nplab.extension.dashboard.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
 
-import com.nplab.extension.auth.JwtUtil;
 import com.nplab.extension.dashboard.service.CasesCount;
 import com.nplab.extension.dashboard.service.DataSummary;
+import com.nplab.extension.dashboard.service.DataVersionService;
 import com.nplab.extension.dashboard.service.SampleStatsService;
 
 @CrossOrigin(origins = "http://localhost:4200", maxAge = 3600)
@@ -27,25 +26,24 @@ import com.nplab.extension.dashboard.service.SampleStatsService;
 public class DailyController {
 
 	private SampleStatsService sampleStatsService;
-	private JwtUtil jwtUtil;
+	private DataVersionService dataVersionService;
 
 	@Autowired
-	public DailyController(SampleStatsService sampleStatsService, JwtUtil jwtUtil) {
+	public DailyController(SampleStatsService sampleStatsService, DataVersionService dataVersionService) {
 		this.sampleStatsService = sampleStatsService;
-		this.jwtUtil = jwtUtil;
+		this.dataVersionService = dataVersionService;
 	}
 
 	/**
 	 *
 	 * @param days No. of days before the current days, since when cases are to be counted daily
-	 * @param token JWT for user authentication
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of CasesCount objects having the no. of internal cases and external cases
 	 */
 	@GetMapping(path = "/count/daily/{days}")
-	public List<CasesCount> getCasesCount(@PathVariable int days, @RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public List<CasesCount> getCasesCount(@PathVariable int days, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return sampleStatsService.findCasesCount(days);
 	}
@@ -53,14 +51,13 @@ public class DailyController {
 	/**
 	 *
 	 * @param time Over the time, cases are to be counted i.e. this month or year
-	 * @param token JWT for user authentication
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return Count of cases registered in the time specified
 	 */
 	@GetMapping(path = "/count/{time}")
-	public long getCasesOverTime(@PathVariable String time, @RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public Long getCasesOverTime(@PathVariable String time, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return this.sampleStatsService.countCasesOverTime(time);
 	}
@@ -68,15 +65,13 @@ public class DailyController {
 	/**
 	 *
 	 * @param toSummarize Column name whose data is to be summarised
-	 * @param token JWT for user authentication
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return DataSummary object containing the mean and maximum value of the column
 	 */
 	@GetMapping(path = "/summary/{toSummarize}")
-	public DataSummary getDataSummary(@PathVariable String toSummarize,
-			@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public DataSummary getDataSummary(@PathVariable String toSummarize, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return sampleStatsService.summarizeData(toSummarize);
 	}
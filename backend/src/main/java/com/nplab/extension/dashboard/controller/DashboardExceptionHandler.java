@@ -0,0 +1,33 @@
+/**
+ * Controller advice answering dashboard requests with invalid arguments, such as an unknown column, request type,
+ * page size, page cursor or time interval, with 400 Bad Request instead of 500 Internal Server Error
+ */
+
+package com.nplab.extension.dashboard.controller;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RestControllerAdvice;
+
+import com.nplab.extension.dashboard.service.InvalidDashboardRequestException;
+
+@RestControllerAdvice(basePackageClasses = DashboardExceptionHandler.class)
+public class DashboardExceptionHandler {
+
+	/**
+	 * Services of the dashboard throw InvalidDashboardRequestException for arguments of the request they cannot
+	 * answer. Any other exception, such as an IllegalArgumentException of a broken invariant, stays a server error
+	 * @param e Exception thrown by the service
+	 * @param response Response sent as an error with the message of the exception
+	 * @throws IOException If the error cannot be sent
+	 */
+	@ExceptionHandler(InvalidDashboardRequestException.class)
+	public void handleInvalidRequest(InvalidDashboardRequestException e, HttpServletResponse response)
+			throws IOException {
+		response.sendError(HttpServletResponse.SC_BAD_REQUEST, e.getMessage());
+	}
+
+}
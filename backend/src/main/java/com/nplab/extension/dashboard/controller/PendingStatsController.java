@@ -5,18 +5,29 @@
 
 package com.nplab.extension.dashboard.controller;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.AccessDeniedException;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
-import com.nplab.extension.auth.JwtUtil;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import com.nplab.extension.dashboard.service.DataVersionService;
+import com.nplab.extension.dashboard.service.PendingEventsService;
+import com.nplab.extension.dashboard.service.PendingPage;
 import com.nplab.extension.dashboard.service.SampleStatsService;
 import com.nplab.extension.db.PendingAsset;
 
@@ -26,135 +37,243 @@ import com.nplab.extension.db.PendingAsset;
 public class PendingStatsController {
 
 	private SampleStatsService sampleStatsService;
-	private JwtUtil jwtUtil;
+	private DataVersionService dataVersionService;
+	private PendingEventsService pendingEventsService;
+	private ObjectMapper objectMapper;
 
 	@Autowired
-	public PendingStatsController(SampleStatsService sampleStatsService, JwtUtil jwtUtil) {
+	public PendingStatsController(SampleStatsService sampleStatsService, DataVersionService dataVersionService,
+			PendingEventsService pendingEventsService, ObjectMapper objectMapper) {
 		this.sampleStatsService = sampleStatsService;
-		this.jwtUtil = jwtUtil;
+		this.dataVersionService = dataVersionService;
+		this.pendingEventsService = pendingEventsService;
+		this.objectMapper = objectMapper;
 	}
 	/**
-	 * Validates JWT for the session, if it's valid returns a list of pending cases
-	 * @param token: JWT of the session
+	 * Returns a list of pending cases
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of all pending cases
 	 * */
 	@GetMapping
-	public List<PendingAsset> getPendingAssets(@RequestHeader(name = "Authorization") String token) { 
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public List<PendingAsset> getPendingAssets(WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
-		
 		return this.sampleStatsService.findPendingAssets();
 	}
 
 	/**
-	 * Validates JWT for the session and returns the total number of pending cases
-	 * @param token: JWT of the session
+	 * Returns a page of all pending cases, ordered by start time and NP number
+	 * @param size Number of pending cases in the page, at most 1000
+	 * @param after Cursor returned with the previous page, omitted for the first page
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return PendingPage of pending cases with the cursor of the next page
+	 */
+	@GetMapping(params = "size")
+	public PendingPage getPendingAssetsPage(@RequestParam int size,
+			@RequestParam(required = false) String after, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return this.sampleStatsService.findPendingAssetsPage(null, null, after, size);
+	}
+
+	/**
+	 * Writes all pending cases as a JSON array, one case at a time as they are read from the database
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return Body streaming the list of pending cases
+	 */
+	@GetMapping(params = "stream")
+	public ResponseEntity<StreamingResponseBody> streamPendingAssets(WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return pendingAssetsBody(null, null);
+	}
+
+	/**
+	 * Subscribes to the number of pending cases, sent when subscribing and whenever it changes, and to the
+	 * cases registered and completed since the previous event
+	 * @return Stream of "count" and "delta" server-sent events
+	 */
+	@GetMapping(path = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+	public SseEmitter getPendingEvents() {
+		return this.pendingEventsService.subscribe();
+	}
+
+	/**
+	 * Returns the total number of pending cases
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return Number of pending cases
 	 */
 	@GetMapping(path = "/count")
-	public long getPendingAssetsCount(@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7); 
-		
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public Long getPendingAssetsCount(WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return this.sampleStatsService.countPendingAssets();
 	}
 
 	/**
-	 * Validates JWT and returns the list of internal or external pending cases, as indicated by the origin parameter
+	 * Returns the list of internal or external pending cases, as indicated by the origin parameter
 	 * @param origin The place where case is registered i.e. internal or external
-	 * @param token JWT of the session
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of pending cases
 	 */
 	@GetMapping(path = "/{origin}")
-	public List<PendingAsset> getPendingAssetsByType(@PathVariable String origin, @RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public List<PendingAsset> getPendingAssetsByType(@PathVariable String origin, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return this.sampleStatsService.findPendingCasesByOrigin(origin);
 	}
 
 	/**
-	 * Validates JWT and returns the list of pending cases which were registered either internally
+	 * Returns a page of internal or external pending cases, ordered by start time and NP number
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param size Number of pending cases in the page, at most 1000
+	 * @param after Cursor returned with the previous page, omitted for the first page
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return PendingPage of pending cases with the cursor of the next page
+	 */
+	@GetMapping(path = "/{origin}", params = "size")
+	public PendingPage getPendingAssetsPageByType(@PathVariable String origin, @RequestParam int size,
+			@RequestParam(required = false) String after, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return this.sampleStatsService.findPendingAssetsPage(origin, null, after, size);
+	}
+
+	/**
+	 * Writes internal or external pending cases as a JSON array, one case at a time as they are read from the database
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return Body streaming the list of pending cases
+	 */
+	@GetMapping(path = "/{origin}", params = "stream")
+	public ResponseEntity<StreamingResponseBody> streamPendingAssetsByType(@PathVariable String origin, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return pendingAssetsBody(origin, null);
+	}
+
+	/**
+	 * Returns the list of pending cases which were registered either internally
 	 * or externally or with an odd or even NP number
-	 * @param token JWT for the session
 	 * @param origin The place where case is registered i.e. internal or external
 	 * @param parity Parity of NP number whether odd or even
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of pending cases
 	 */
 	@GetMapping(path = "/{origin}/{parity}")
-	public List<PendingAsset> getPendingAssetsByOriginAndParity(@RequestHeader(name = "Authorization") String token,
-			@PathVariable String origin, @PathVariable String parity) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public List<PendingAsset> getPendingAssetsByOriginAndParity(@PathVariable String origin, @PathVariable String parity, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return this.sampleStatsService.findPendingCasesByOriginAndParity(origin, parity);
 	}
 
 	/**
-	 * Validates JWT and returns the list of number of (origin and parity based) pending cases in different
+	 * Returns a page of pending cases registered internally or externally with an odd or even NP number, ordered by start time and NP number
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 * @param size Number of pending cases in the page, at most 1000
+	 * @param after Cursor returned with the previous page, omitted for the first page
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return PendingPage of pending cases with the cursor of the next page
+	 */
+	@GetMapping(path = "/{origin}/{parity}", params = "size")
+	public PendingPage getPendingAssetsPageByOriginAndParity(@PathVariable String origin, @PathVariable String parity, @RequestParam int size,
+			@RequestParam(required = false) String after, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return this.sampleStatsService.findPendingAssetsPage(origin, parity, after, size);
+	}
+
+	/**
+	 * Writes pending cases registered internally or externally with an odd or even NP number as a JSON array, one case at a time as they are read from the database
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
+	 * @return Body streaming the list of pending cases
+	 */
+	@GetMapping(path = "/{origin}/{parity}", params = "stream")
+	public ResponseEntity<StreamingResponseBody> streamPendingAssetsByOriginAndParity(@PathVariable String origin, @PathVariable String parity, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
+		}
+		return pendingAssetsBody(origin, parity);
+	}
+
+	/**
+	 * Returns the list of number of (origin and parity based) pending cases in different
 	 * time intervals
 	 * @param origin The place where case is registered i.e. internal or external
 	 * @param parity Parity of NP number whether odd or even
 	 * @param startDays List of starting times of time intervals where pending cases are to be counted
 	 * @param endDays List of ending times of time intervals where pending cases are to be counted
-	 * @param token JWT for the session
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of number of pending cases
 	 */
 	@GetMapping(path = "/chart/{origin}/{parity}/{startDays}/{endDays}")
 	public List<Long> getPendingStatsByTypeAndParity(@PathVariable String origin, @PathVariable String parity,
-			@PathVariable List<Integer> startDays, @PathVariable List<Integer> endDays, 
-			@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+			@PathVariable List<Integer> startDays, @PathVariable List<Integer> endDays, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
-		
 		return sampleStatsService.findPendingAssetsBreakout(startDays, endDays, origin, parity); 
 	}
 
 	/**
-	 * Validates JWT and returns the list of number of (origin based) pending cases in different
+	 * Returns the list of number of (origin based) pending cases in different
 	 * time intervals
 	 * @param origin The place where case is registered i.e. internal or external
 	 * @param startDays List of starting times of time intervals where pending cases are to be counted
 	 * @param endDays List of ending times of time intervals where pending cases are to be counted
-	 * @param token JWT for the session
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of number of pending cases
 	 */
 	@GetMapping(path = "/chart/{origin}/{startDays}/{endDays}")
 	public List<Long> getPendingStatsByType(@PathVariable String origin, @PathVariable List<Integer> startDays,
-			@PathVariable List<Integer> endDays,
-			@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+			@PathVariable List<Integer> endDays, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
-		
 		return sampleStatsService.findPendingAssetsBreakout(startDays, endDays, origin);
 	}
 
 	/**
-	 * Validates JWT and returns the list of number of pending cases in different time intervals
+	 * Returns the list of number of pending cases in different time intervals
 	 * @param startDays List of starting times of time intervals where pending cases are to be counted
 	 * @param endDays List of ending times of time intervals where pending cases are to be counted
-	 * @param token JWT for the session
+	 * @param request Request answered with 304 Not Modified while asset_summary is unchanged
 	 * @return List of number of pending cases
 	 */
 	@GetMapping(path = "/chart/{startDays}/{endDays}")
-	public List<Long> getPendingStats(@PathVariable List<Integer> startDays, @PathVariable List<Integer> endDays,
-			@RequestHeader(name = "Authorization") String token) {
-
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
+	public List<Long> getPendingStats(@PathVariable List<Integer> startDays, @PathVariable List<Integer> endDays, WebRequest request) {
+		if (request.checkNotModified(dataVersionService.getETag(), dataVersionService.getLastModified())) {
+			return null;
 		}
 		return sampleStatsService.findPendingAssetsBreakout(startDays, endDays);
 	}
 
+	private ResponseEntity<StreamingResponseBody> pendingAssetsBody(String origin, String parity) {
+		return ResponseEntity.ok().contentType(MediaType.APPLICATION_JSON).body(out -> {
+			try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+				generator.writeStartArray();
+				this.sampleStatsService.streamPendingAssets(origin, parity, asset -> {
+					try {
+						generator.writeObject(asset);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				});
+				generator.writeEndArray();
+			}
+		});
+	}
+
 }
@@ -8,16 +8,16 @@ package com.nplab.extension.dashboard.controller;
 import java.util.List;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.security.access.AccessDeniedException;
 import org.springframework.web.bind.annotation.CrossOrigin;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
-import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
-import com.nplab.extension.auth.JwtUtil;
+import com.nplab.extension.dashboard.service.ReportContext;
 import com.nplab.extension.dashboard.service.SampleStatsService;
+import com.nplab.extension.dashboard.service.TatPercentiles;
 import com.nplab.extension.db.RequestCount;
 
 @CrossOrigin(origins = "http://localhost:4200", maxAge = 3600)
@@ -25,61 +25,73 @@ import com.nplab.extension.db.RequestCount;
 @RequestMapping("/api/dashboard")
 public class ReportStatsController {
 	private SampleStatsService sampleStatsService;
-	private JwtUtil jwtUtil;
 
 	@Autowired
-	public ReportStatsController(SampleStatsService sampleStatsService, JwtUtil jwtUtil) {
+	public ReportStatsController(SampleStatsService sampleStatsService) {
 		this.sampleStatsService = sampleStatsService;
-		this.jwtUtil = jwtUtil;
 	}
 
 	/**
-	 * Validates JWT and returns a list of number of cases in a given time interval grouped by different
+	 * Returns a list of number of cases in a given time interval grouped by different
 	 * biopsy types
 	 * @param startTime Start date of the time interval where cases are counted
 	 * @param endTime End date of the time interval where cases are counted
-	 * @param token JWT for the session
 	 * @return List of number of cases grouped by biopsy types
 	 */
 	@GetMapping(path = "/cases/{startTime}/{endTime}")
 	public List<Long> getSampleTypeStats(@PathVariable String startTime,
-												@PathVariable String endTime,
-												@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
-		}
-		return sampleStatsService.findSampleTypeBreakout(startTime, endTime);
+												@PathVariable String endTime) {
+		return sampleStatsService.findSampleTypeBreakout(new ReportContext(startTime, endTime));
 	}
 
 	/**
-	 * Validates JWT and returns a list of number of cases of a certain biopsy type with TAT lying in different
+	 * Returns a list of number of cases of a certain biopsy type with TAT lying in different
 	 * intervals
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param startValues List of start values of the range where TAT of a case should lie to be counted
 	 * @param endValues List of end value of the range where TAT of a case should lie to be counted
-	 * @param token JWT for the session
+	 * @param startTime Start date of the time interval where cases are counted, defaults to the start of this year
+	 *                  when endTime is not given either
+	 * @param endTime End date of the time interval where cases are counted, defaults to today when startTime
+	 *                is not given either
 	 * @return List of numbers of cases of a certain biopsy type whose TAT lies in specified intervals
 	 */
 	@GetMapping(path = "/tat/{sampleType}/{startValues}/{endValues}")
 	public List<Long> getTatStats(@PathVariable String sampleType, 
 							@PathVariable List<Integer> startValues,
 							@PathVariable List<Integer> endValues,
-							@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
-		}
-		return sampleStatsService.findTatBreakout(sampleType, startValues, endValues);
+							@RequestParam(required = false) String startTime,
+							@RequestParam(required = false) String endTime) {
+		return sampleStatsService.findTatBreakout(ReportContext.ofOrCurrentYear(startTime, endTime), sampleType,
+				startValues, endValues);
 	}
 
 	/**
-	 * Validates JWT and returns a list of numbers of cases of a certain biopsy type, and TAT within a certain
+	 * Returns the median, 90th and 99th percentile TAT of the cases of a certain biopsy type
+	 * @param sampleType Biopsy type of case for it to be considered
+	 * @param startTime Start date of the time interval where cases are considered, defaults to the start of this year
+	 *                  when endTime is not given either
+	 * @param endTime End date of the time interval where cases are considered, defaults to today when startTime
+	 *                is not given either
+	 * @return TatPercentiles containing the number of cases and their TAT percentiles
+	 */
+	@GetMapping(path = "/tat/percentiles/{sampleType}")
+	public TatPercentiles getTatPercentiles(@PathVariable String sampleType,
+							@RequestParam(required = false) String startTime,
+							@RequestParam(required = false) String endTime) {
+		return sampleStatsService.findTatPercentiles(ReportContext.ofOrCurrentYear(startTime, endTime), sampleType);
+	}
+
+	/**
+	 * Returns a list of numbers of cases of a certain biopsy type, and TAT within a certain
 	 * range with different special requests/tests
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
 	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
-	 * @param token JWT for the session
+	 * @param startTime Start date of the time interval where cases are counted, defaults to the start of this year
+	 *                  when endTime is not given either
+	 * @param endTime End date of the time interval where cases are counted, defaults to today when startTime
+	 *                is not given either
 	 * @return List of numbers of cases of a certain biopsy type, and TAT within a certain range with
 	 * different special requests/tests
 	 */
@@ -87,11 +99,36 @@ public class ReportStatsController {
 	public List<RequestCount> getRequestStats(@PathVariable String sampleType, 
 											@PathVariable int tatStart, 
 											@PathVariable int tatEnd,
-											@RequestHeader(name = "Authorization") String token) {
-		token = token.substring(7);
-		if (jwtUtil.isTokenExpired(token)) {
-			throw new AccessDeniedException("Unauthorized");
-		}
-		return sampleStatsService.findRequestBreakout(sampleType, tatStart, tatEnd);
+											@RequestParam(required = false) String startTime,
+											@RequestParam(required = false) String endTime) {
+		return sampleStatsService.findRequestBreakout(ReportContext.ofOrCurrentYear(startTime, endTime), sampleType,
+				tatStart, tatEnd);
+	}
+
+	/**
+	 * Returns the number of cases of a certain biopsy type, and TAT within a certain range, having all of the
+	 * given special requests/tests, e.g. Tumor cases with IHC and Decal
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param requests Requests the case should all have, among specialStains, ihc, processAll, deeper, decal,
+	 *                 keptForFixation, em, semithin and ehc
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param startTime Start date of the time interval where cases are counted, defaults to the start of this year
+	 *                  when endTime is not given either
+	 * @param endTime End date of the time interval where cases are counted, defaults to today when startTime
+	 *                is not given either
+	 * @param origin The place where case is registered i.e. internal or external, defaults to all cases
+	 * @return Number of cases meeting all the conditions
+	 */
+	@GetMapping(path = "/requests/count/{sampleType}/{requests}/{tatStart}/{tatEnd}")
+	public long getRequestCombinationCount(@PathVariable String sampleType,
+											@PathVariable List<String> requests,
+											@PathVariable int tatStart,
+											@PathVariable int tatEnd,
+											@RequestParam(required = false) String startTime,
+											@RequestParam(required = false) String endTime,
+											@RequestParam(required = false) String origin) {
+		return sampleStatsService.countRequestCombination(ReportContext.ofOrCurrentYear(startTime, endTime),
+				sampleType, requests, tatStart, tatEnd, origin);
 	}
 }
@@ -0,0 +1,135 @@
+/**
+ * Service class holding compressed bitmaps of the rows of an AssetSnapshot: one per request flag, per biopsy type,
+ * per TAT value and per day of completion, and one of the external cases. Combinations of conditions are answered
+ * by intersecting bitmaps and taking the cardinality, without looking at the rows. The rows registered in a time
+ * interval are a range of rows, as the snapshot is ordered by start time
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+
+public final class AssetBitmapIndex {
+	private final AssetSnapshot snapshot;
+	private final RoaringBitmap[] requests;
+	private final RoaringBitmap[] biopsyTypes;
+	private final RoaringBitmap external = new RoaringBitmap();
+	private final NavigableMap<Integer, RoaringBitmap> tats = new TreeMap<>();
+	private final NavigableMap<LocalDate, RoaringBitmap> completedOn = new TreeMap<>();
+
+	/**
+	 * Indexes every row of the snapshot
+	 * @param snapshot AssetSnapshot to be indexed
+	 */
+	AssetBitmapIndex(AssetSnapshot snapshot) {
+		this.snapshot = snapshot;
+		this.requests = newBitmaps(AssetSummaryDao.REQUEST_FLAGS.size());
+		this.biopsyTypes = newBitmaps(snapshot.biopsyTypeCount());
+
+		// Rows are added in increasing order, which is the cheapest way to fill a bitmap
+		LocalDate day = null;
+		long nextDay = Long.MIN_VALUE;
+		for (int row = 0; row < snapshot.size(); row ++) {
+			int flags = snapshot.requestFlags(row);
+			for (int i = 0; i < requests.length; i ++) {
+				if ((flags & (1 << i)) != 0) {
+					requests[i].add(row);
+				}
+			}
+			if (snapshot.biopsyTypeCode(row) != AssetSnapshot.NO_CODE) {
+				biopsyTypes[snapshot.biopsyTypeCode(row)].add(row);
+			}
+			if ((snapshot.npAttributes(row) & AssetSnapshot.EXTERNAL) != 0) {
+				external.add(row);
+			}
+			if (snapshot.tat(row) != AssetSnapshot.NO_TAT) {
+				tats.computeIfAbsent(snapshot.tat(row), tat -> new RoaringBitmap()).add(row);
+			}
+			if (!snapshot.isPending(row)) {
+				long endTime = snapshot.endTime(row);
+				// Consecutive rows often complete on the same day, whose bounds are then reused
+				if (day == null || endTime < day.toDateTimeAtStartOfDay().getMillis() || endTime >= nextDay) {
+					day = new LocalDate(endTime);
+					nextDay = day.plusDays(1).toDateTimeAtStartOfDay().getMillis();
+				}
+				completedOn.computeIfAbsent(day, key -> new RoaringBitmap()).add(row);
+			}
+		}
+
+		for (RoaringBitmap bitmap : requests) {
+			bitmap.runOptimize();
+		}
+		for (RoaringBitmap bitmap : biopsyTypes) {
+			bitmap.runOptimize();
+		}
+		external.runOptimize();
+	}
+
+	private static RoaringBitmap[] newBitmaps(int count) {
+		RoaringBitmap[] bitmaps = new RoaringBitmap[count];
+		for (int i = 0; i < count; i ++) {
+			bitmaps[i] = new RoaringBitmap();
+		}
+		return bitmaps;
+	}
+
+	/**
+	 * Counts the cases processed at some point of a time interval, of a certain biopsy type and TAT within a
+	 * certain range, having all of the given special requests/tests
+	 * @param start Start of the first day of the time interval
+	 * @param end Start of the last day of the time interval
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param requestMask Request flags the case should all have, bit i standing for AssetSummaryDao.REQUEST_FLAGS[i]
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param origin The place where case is registered i.e. internal or external, or null for all cases
+	 * @return Number of cases meeting all the conditions
+	 */
+	long count(DateTime start, DateTime end, String sampleType, int requestMask, int tatStart, int tatEnd,
+			String origin) {
+		if (tatStart > tatEnd) {
+			return 0;
+		}
+
+		List<RoaringBitmap> conditions = new ArrayList<>();
+		// Registered at or before the end of the interval, and completed at or after its start
+		conditions.add(RoaringBitmap.bitmapOfRange(snapshot.firstStarted(),
+				snapshot.firstStartedAfter(end.getMillis())));
+		conditions.add(FastAggregation.or(completedOn.tailMap(start.toLocalDate(), true).values().iterator()));
+
+		List<RoaringBitmap> matchingTypes = new ArrayList<>();
+		boolean[] matches = snapshot.biopsyTypesContaining(sampleType);
+		for (int code = 0; code < matches.length; code ++) {
+			if (matches[code]) {
+				matchingTypes.add(biopsyTypes[code]);
+			}
+		}
+		conditions.add(FastAggregation.or(matchingTypes.iterator()));
+		conditions.add(FastAggregation.or(tats.subMap(tatStart, true, tatEnd, true).values().iterator()));
+		for (int i = 0; i < requests.length; i ++) {
+			if ((requestMask & (1 << i)) != 0) {
+				conditions.add(requests[i]);
+			}
+		}
+		if (origin != null && AssetSnapshot.originBits(origin) != 0) {
+			conditions.add(external);
+		}
+
+		RoaringBitmap cases = FastAggregation.and(conditions.iterator());
+		if (origin != null && AssetSnapshot.originBits(origin) == 0) {
+			return RoaringBitmap.andNotCardinality(cases, external);
+		}
+		return cases.getLongCardinality();
+	}
+
+}
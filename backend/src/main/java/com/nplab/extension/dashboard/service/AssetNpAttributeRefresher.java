@@ -0,0 +1,42 @@
+/**
+ * Service class keeping the asset_np_attribute side table up to date with the NP numbers registered in asset_summary
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nplab.extension.dao.AssetNpAttributeDao;
+
+@Component
+public class AssetNpAttributeRefresher {
+	private final Logger log = LoggerFactory.getLogger(AssetNpAttributeRefresher.class);
+
+	private AssetNpAttributeDao assetNpAttributeDao;
+	private DateTime lastRefresh;
+
+	@Autowired
+	public AssetNpAttributeRefresher(AssetNpAttributeDao assetNpAttributeDao) {
+		this.assetNpAttributeDao = assetNpAttributeDao;
+	}
+
+	/**
+	 * Adds the NP numbers registered since the previous refresh. The first refresh after startup looks at
+	 * every asset, later ones only at the assets registered in the last day before the previous refresh
+	 */
+	@Scheduled(fixedDelayString = "${dashboard.np-attributes.refresh-ms:30000}")
+	public void refresh() {
+		DateTime refreshStart = new DateTime();
+		int added = assetNpAttributeDao.addMissingAttributes((lastRefresh == null) ? null : lastRefresh.minusDays(1));
+		lastRefresh = refreshStart;
+		if (added > 0) {
+			log.debug("Added origin and parity of {} NP numbers", added);
+		}
+	}
+
+}
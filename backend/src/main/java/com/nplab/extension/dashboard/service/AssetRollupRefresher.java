@@ -0,0 +1,80 @@
+/**
+ * Service class keeping the asset_daily_rollup and asset_completed_rollup tables up to date with asset_summary
+ * when the rollup is enabled
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nplab.extension.dao.AssetRollupDao;
+
+@Component
+public class AssetRollupRefresher {
+	private final Logger log = LoggerFactory.getLogger(AssetRollupRefresher.class);
+
+	private AssetRollupDao assetRollupDao;
+	private boolean enabled;
+	private long fullRebuildMillis;
+	private long rebuiltAt;
+	private volatile boolean ready;
+	private volatile long generation;
+
+	@Autowired
+	public AssetRollupRefresher(AssetRollupDao assetRollupDao,
+			@Value("${dashboard.rollup.enabled:false}") boolean enabled,
+			@Value("${dashboard.rollup.full-rebuild-ms:86400000}") long fullRebuildMillis) {
+		this.assetRollupDao = assetRollupDao;
+		this.enabled = enabled;
+		this.fullRebuildMillis = fullRebuildMillis;
+	}
+
+	/**
+	 * Recomputes the days having cases registered or completed since the previous refresh, looking one more day
+	 * back for cases committed late. Every day is recomputed on the first refresh after startup, every configured
+	 * full rebuild time, and when the number of cases does not add up, as when cases were removed
+	 */
+	@Scheduled(fixedDelayString = "${dashboard.rollup.refresh-ms:300000}")
+	public void refresh() {
+		if (!enabled) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		boolean rebuild = !ready || now - rebuiltAt >= fullRebuildMillis;
+		int recomputed = assetRollupDao.refresh(new DateTime(now), 1, rebuild);
+		if (recomputed >= 0 && !assetRollupDao.countsMatch()) {
+			log.debug("Rollup counts do not match asset_summary, rebuilding it");
+			recomputed = assetRollupDao.refresh(new DateTime(now), 1, true);
+		}
+		if (recomputed < 0) {
+			rebuiltAt = now;
+		}
+		if (recomputed != 0) {
+			generation++;
+			log.debug("Recomputed the rollup of {} days", (recomputed < 0) ? "all" : recomputed);
+		}
+		ready = true;
+	}
+
+	/**
+	 * @return true if the rollup is enabled and has been refreshed since startup, so that queries can be
+	 *     answered from it
+	 */
+	public boolean isReady() {
+		return ready;
+	}
+
+	/**
+	 * @return Number of refreshes which changed the rollup since startup
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+}
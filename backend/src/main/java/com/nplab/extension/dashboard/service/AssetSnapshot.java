@@ -0,0 +1,429 @@
+/**
+ * Service class holding an immutable in-memory copy of asset_summary in columnar form: one primitive array per
+ * column, with biopsy types and request codes dictionary encoded, the request flags packed into a mask and the
+ * origin and parity of the NP number computed once. Rows are ordered by start time and NP number, so that the
+ * rows registered in a time interval are found by binary search. A new snapshot is built from the previous one
+ * by a Builder, and swapped in whole, so that readers never see a half refreshed snapshot
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.joda.time.DateTime;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DataVersion;
+import com.nplab.extension.db.RequestCount;
+
+public final class AssetSnapshot {
+	// Start time of a case having none, which comes before every other, end time of a pending case and TAT of a
+	// case having none
+	static final long NO_START = Long.MIN_VALUE;
+	static final long NO_END = Long.MIN_VALUE;
+	static final int NO_TAT = Integer.MIN_VALUE;
+	// Dictionary code of a missing biopsy type or request code
+	static final int NO_CODE = -1;
+
+	// Bits of the NP number attributes: origin in the lowest bit, parity in the next two
+	static final int EXTERNAL = 1;
+	static final int EVEN = 1 << 1;
+	static final int ODD = 2 << 1;
+	static final int ORIGIN_MASK = 1;
+	static final int ORIGIN_AND_PARITY_MASK = 7;
+
+	private final DataVersion version;
+	private final long loadedAt;
+	private final int size;
+	private final String[] npNumbers;
+	private final long[] startTimes;
+	private final long[] endTimes;
+	private final int[] tats;
+	private final short[] requestFlags;
+	private final byte[] npAttributes;
+	private final int[] biopsyTypes;
+	private final int[] requestCodes;
+	private final String[] biopsyTypeDictionary;
+	private final String[] requestCodeDictionary;
+	// RequestCount mask of every request code of the dictionary
+	private final int[] requestCodeMasks;
+	// Built by the Builder once the rows are set, before the snapshot is handed out
+	private AssetBitmapIndex bitmapIndex;
+
+	private AssetSnapshot(DataVersion version, long loadedAt, int size, String[] biopsyTypeDictionary,
+			String[] requestCodeDictionary) {
+		this.version = version;
+		this.loadedAt = loadedAt;
+		this.size = size;
+		this.npNumbers = new String[size];
+		this.startTimes = new long[size];
+		this.endTimes = new long[size];
+		this.tats = new int[size];
+		this.requestFlags = new short[size];
+		this.npAttributes = new byte[size];
+		this.biopsyTypes = new int[size];
+		this.requestCodes = new int[size];
+		this.biopsyTypeDictionary = biopsyTypeDictionary;
+		this.requestCodeDictionary = requestCodeDictionary;
+		this.requestCodeMasks = new int[requestCodeDictionary.length];
+		for (int code = 0; code < requestCodeDictionary.length; code ++) {
+			requestCodeMasks[code] = RequestCount.toMask(requestCodeDictionary[code]);
+		}
+	}
+
+	/**
+	 * @return DataVersion of asset_summary read before the snapshot was loaded
+	 */
+	public DataVersion getVersion() {
+		return version;
+	}
+
+	/**
+	 * @return Time in milliseconds at which loading the snapshot started
+	 */
+	public long getLoadedAt() {
+		return loadedAt;
+	}
+
+	/**
+	 * @return Number of cases in the snapshot
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * @param time Time in milliseconds
+	 * @return Index of the first row registered at or after the time, size if there is none
+	 */
+	int firstStartedOnOrAfter(long time) {
+		int low = 0;
+		int high = size;
+		while (low < high) {
+			int middle = (low + high) >>> 1;
+			if (startTimes[middle] < time) {
+				low = middle + 1;
+			} else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * @return Index of the first row having a start time, the rows before it matching no condition on the start
+	 *     time, as in SQL
+	 */
+	int firstStarted() {
+		return firstStartedAfter(NO_START);
+	}
+
+	/**
+	 * @param time Time in milliseconds
+	 * @return Index of the first row registered strictly after the time, size if there is none
+	 */
+	int firstStartedAfter(long time) {
+		return (time == Long.MAX_VALUE) ? size : firstStartedOnOrAfter(time + 1);
+	}
+
+	String npNumber(int row) {
+		return npNumbers[row];
+	}
+
+	long startTime(int row) {
+		return startTimes[row];
+	}
+
+	long endTime(int row) {
+		return endTimes[row];
+	}
+
+	boolean isPending(int row) {
+		return endTimes[row] == NO_END;
+	}
+
+	int tat(int row) {
+		return tats[row];
+	}
+
+	int requestFlags(int row) {
+		return requestFlags[row];
+	}
+
+	int npAttributes(int row) {
+		return npAttributes[row];
+	}
+
+	int biopsyTypeCode(int row) {
+		return biopsyTypes[row];
+	}
+
+	int requestCode(int row) {
+		return requestCodes[row];
+	}
+
+	String biopsyType(int row) {
+		return biopsyTypeOf(biopsyTypes[row]);
+	}
+
+	/**
+	 * @param code Dictionary code of a biopsy type
+	 * @return Biopsy type, or null for NO_CODE
+	 */
+	String biopsyTypeOf(int code) {
+		return (code == NO_CODE) ? null : biopsyTypeDictionary[code];
+	}
+
+	/**
+	 * @param code Dictionary code of a request code
+	 * @return Request code, or null for NO_CODE
+	 */
+	String requestCodeOf(int code) {
+		return (code == NO_CODE) ? null : requestCodeDictionary[code];
+	}
+
+	/**
+	 * @param code Dictionary code of a request code
+	 * @return Mask of the request types of the request code as RequestCount.toMask, 0 for NO_CODE
+	 */
+	int requestMaskOf(int code) {
+		return (code == NO_CODE) ? 0 : requestCodeMasks[code];
+	}
+
+	/**
+	 * @return Number of distinct request codes, the dictionary codes being 0 to this number excluded
+	 */
+	int requestCodeCount() {
+		return requestCodeDictionary.length;
+	}
+
+	/**
+	 * @return Number of distinct biopsy types, the dictionary codes being 0 to this number excluded
+	 */
+	int biopsyTypeCount() {
+		return biopsyTypeDictionary.length;
+	}
+
+	/**
+	 * @return AssetBitmapIndex of the rows of the snapshot
+	 */
+	AssetBitmapIndex bitmapIndex() {
+		return bitmapIndex;
+	}
+
+	/**
+	 * Finds which biopsy types contain a sample type, ignoring case as the LIKE of the SQL queries does
+	 * @param sampleType Sample type such as Tumor
+	 * @return Whether the biopsy type of each dictionary code contains the sample type
+	 */
+	boolean[] biopsyTypesContaining(String sampleType) {
+		String needle = sampleType.toLowerCase();
+		boolean[] matches = new boolean[biopsyTypeDictionary.length];
+		for (int i = 0; i < matches.length; i ++) {
+			matches[i] = biopsyTypeDictionary[i].toLowerCase().contains(needle);
+		}
+		return matches;
+	}
+
+	/**
+	 * Finds the origin and parity bits of an NP number the way asset_np_attribute does: external when it starts
+	 * with X, and parity of the digit just before the first '/', as in 1234/21
+	 * @param npNumber NP number of a case
+	 * @return Bits of the origin and parity of the NP number
+	 */
+	static int npAttributesOf(String npNumber) {
+		int attributes = (npNumber.startsWith("X") || npNumber.startsWith("x")) ? EXTERNAL : 0;
+		int separator = npNumber.indexOf('/');
+		if (separator >= 1) {
+			char digit = npNumber.charAt(separator - 1);
+			if (digit >= '0' && digit <= '9') {
+				attributes |= ((digit - '0') % 2 == 0) ? EVEN : ODD;
+			}
+		}
+		return attributes;
+	}
+
+	/**
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @return Origin bits of the cases registered there, to be compared under ORIGIN_MASK
+	 */
+	static int originBits(String origin) {
+		return origin.equals("internal") ? 0 : EXTERNAL;
+	}
+
+	/**
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 * @return Origin and parity bits of the cases registered there, to be compared under ORIGIN_AND_PARITY_MASK
+	 */
+	static int originAndParityBits(String origin, String parity) {
+		return originBits(origin) | (parity.equals("even") ? EVEN : ODD);
+	}
+
+	private static final class Row {
+		private String npNumber;
+		private long startTime;
+		private long endTime;
+		private int tat;
+		private short requestFlags;
+		private byte npAttributes;
+		private int biopsyType;
+		private int requestCode;
+
+		private int compareTo(Row other) {
+			int byStart = Long.compare(startTime, other.startTime);
+			return (byStart != 0) ? byStart : npNumber.compareTo(other.npNumber);
+		}
+
+		private int compareTo(AssetSnapshot snapshot, int index) {
+			int byStart = Long.compare(startTime, snapshot.startTimes[index]);
+			return (byStart != 0) ? byStart : npNumber.compareTo(snapshot.npNumbers[index]);
+		}
+	}
+
+	/**
+	 * Builds a snapshot from the rows of a previous one, if any, and rows read from asset_summary which replace
+	 * the previous rows of the same NP number
+	 */
+	public static final class Builder {
+		private final AssetSnapshot base;
+		private final Map<String, Row> added = new HashMap<>();
+		private final List<String> biopsyTypeDictionary = new ArrayList<>();
+		private final Map<String, Integer> biopsyTypeCodes = new HashMap<>();
+		private final List<String> requestCodeDictionary = new ArrayList<>();
+		private final Map<String, Integer> requestCodeCodes = new HashMap<>();
+
+		/**
+		 * Starts an empty snapshot
+		 */
+		public Builder() {
+			this(null);
+		}
+
+		/**
+		 * Starts a snapshot holding the rows of a previous one
+		 * @param base Previous snapshot, or null to start an empty one
+		 */
+		public Builder(AssetSnapshot base) {
+			this.base = base;
+			if (base != null) {
+				// Codes of the previous rows stay valid as the dictionaries only grow
+				for (String biopsyType : base.biopsyTypeDictionary) {
+					encode(biopsyType, biopsyTypeDictionary, biopsyTypeCodes);
+				}
+				for (String requestCode : base.requestCodeDictionary) {
+					encode(requestCode, requestCodeDictionary, requestCodeCodes);
+				}
+			}
+		}
+
+		/**
+		 * Adds a case, replacing any case of the same NP number
+		 * @param columns Columns of the case, as read by AssetSummaryDao.streamAssets
+		 */
+		public void add(Object[] columns) {
+			Row row = new Row();
+			row.npNumber = (String) columns[0];
+			row.biopsyType = encode((String) columns[1], biopsyTypeDictionary, biopsyTypeCodes);
+			row.startTime = (columns[2] == null) ? NO_START : ((DateTime) columns[2]).getMillis();
+			row.endTime = (columns[3] == null) ? NO_END : ((DateTime) columns[3]).getMillis();
+			row.tat = (columns[4] == null) ? NO_TAT : ((Number) columns[4]).intValue();
+			row.requestCode = encode((String) columns[5], requestCodeDictionary, requestCodeCodes);
+			int flags = 0;
+			for (int i = 0; i < AssetSummaryDao.REQUEST_FLAGS.size(); i ++) {
+				if (Boolean.TRUE.equals(columns[6 + i])) {
+					flags |= 1 << i;
+				}
+			}
+			row.requestFlags = (short) flags;
+			row.npAttributes = (byte) npAttributesOf(row.npNumber);
+			added.put(row.npNumber, row);
+		}
+
+		private static int encode(String value, List<String> dictionary, Map<String, Integer> codes) {
+			if (value == null) {
+				return NO_CODE;
+			}
+			return codes.computeIfAbsent(value, key -> {
+				dictionary.add(key);
+				return dictionary.size() - 1;
+			});
+		}
+
+		/**
+		 * Merges the added cases into the ordered cases of the previous snapshot, and indexes them, so that the
+		 * AssetSnapshotRefresher rather than the first query pays for the AssetBitmapIndex
+		 * @param version DataVersion of asset_summary read before the cases were added
+		 * @param loadedAt Time in milliseconds at which reading the added cases started
+		 * @return AssetSnapshot of the cases
+		 */
+		public AssetSnapshot build(DataVersion version, long loadedAt) {
+			List<Row> changes = new ArrayList<>(added.values());
+			Collections.sort(changes, Row::compareTo);
+
+			int baseSize = (base == null) ? 0 : base.size;
+			boolean[] replaced = new boolean[baseSize];
+			int kept = baseSize;
+			for (int i = 0; i < baseSize; i ++) {
+				if (added.containsKey(base.npNumbers[i])) {
+					replaced[i] = true;
+					kept --;
+				}
+			}
+
+			AssetSnapshot snapshot = new AssetSnapshot(version, loadedAt, kept + changes.size(),
+					biopsyTypeDictionary.toArray(new String[0]), requestCodeDictionary.toArray(new String[0]));
+			int row = 0;
+			int next = 0;
+			for (int i = 0; i < baseSize; i ++) {
+				if (replaced[i]) {
+					continue;
+				}
+				while (next < changes.size() && changes.get(next).compareTo(base, i) < 0) {
+					snapshot.set(row ++, changes.get(next ++));
+				}
+				snapshot.copy(row ++, base, i);
+			}
+			while (next < changes.size()) {
+				snapshot.set(row ++, changes.get(next ++));
+			}
+
+			snapshot.bitmapIndex = new AssetBitmapIndex(snapshot);
+			return snapshot;
+		}
+	}
+
+	private void set(int index, Row row) {
+		npNumbers[index] = row.npNumber;
+		startTimes[index] = row.startTime;
+		endTimes[index] = row.endTime;
+		tats[index] = row.tat;
+		requestFlags[index] = row.requestFlags;
+		npAttributes[index] = row.npAttributes;
+		biopsyTypes[index] = row.biopsyType;
+		requestCodes[index] = row.requestCode;
+	}
+
+	private void copy(int index, AssetSnapshot from, int fromIndex) {
+		npNumbers[index] = from.npNumbers[fromIndex];
+		startTimes[index] = from.startTimes[fromIndex];
+		endTimes[index] = from.endTimes[fromIndex];
+		tats[index] = from.tats[fromIndex];
+		requestFlags[index] = from.requestFlags[fromIndex];
+		npAttributes[index] = from.npAttributes[fromIndex];
+		biopsyTypes[index] = from.biopsyTypes[fromIndex];
+		requestCodes[index] = from.requestCodes[fromIndex];
+	}
+
+	@Override
+	public String toString() {
+		return "AssetSnapshot [size=" + size + ", version=" + version + ", biopsyTypes="
+				+ Arrays.toString(biopsyTypeDictionary) + "]";
+	}
+
+}
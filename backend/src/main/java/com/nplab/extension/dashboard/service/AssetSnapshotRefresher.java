@@ -0,0 +1,102 @@
+/**
+ * Service class keeping the in-memory AssetSnapshot of asset_summary up to date when the snapshot is enabled
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DataVersion;
+
+@Component
+public class AssetSnapshotRefresher {
+	private final Logger log = LoggerFactory.getLogger(AssetSnapshotRefresher.class);
+
+	private AssetSummaryDao assetSummaryDao;
+	private boolean enabled;
+	private long fullReloadMillis;
+	private volatile AssetSnapshot snapshot;
+	private volatile long generation;
+	private long fullLoadAt;
+
+	@Autowired
+	public AssetSnapshotRefresher(AssetSummaryDao assetSummaryDao,
+			@Value("${dashboard.snapshot.enabled:false}") boolean enabled,
+			@Value("${dashboard.snapshot.full-reload-ms:3600000}") long fullReloadMillis) {
+		this.assetSummaryDao = assetSummaryDao;
+		this.enabled = enabled;
+		this.fullReloadMillis = fullReloadMillis;
+	}
+
+	/**
+	 * Replaces the snapshot when the DataVersion of asset_summary has changed. Only the cases registered or
+	 * completed since one day before the previous load are read again, and merged into the previous snapshot.
+	 * Everything is read again on the first refresh, every configured full reload time, and when the number of
+	 * cases does not add up, as when cases were removed
+	 */
+	@Scheduled(fixedDelayString = "${dashboard.snapshot.refresh-ms:5000}")
+	public void refresh() {
+		if (!enabled) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		DataVersion version = assetSummaryDao.findDataVersion();
+		AssetSnapshot current = snapshot;
+		boolean fullReload = current == null || now - fullLoadAt >= fullReloadMillis;
+		if (!fullReload && version.equals(current.getVersion())) {
+			return;
+		}
+
+		AssetSnapshot next = null;
+		if (!fullReload) {
+			next = load(new AssetSnapshot.Builder(current), new DateTime(current.getLoadedAt()).minusDays(1), version, now);
+			if (next.size() != version.getCount()) {
+				log.debug("Snapshot holds {} cases instead of {}, reloading it", next.size(), version.getCount());
+				next = null;
+			}
+		}
+		if (next == null) {
+			next = load(new AssetSnapshot.Builder(), null, version, now);
+			fullLoadAt = now;
+		}
+
+		snapshot = next;
+		generation++;
+		log.debug("Loaded {}", next);
+	}
+
+	private AssetSnapshot load(AssetSnapshot.Builder builder, DateTime since, DataVersion version, long now) {
+		assetSummaryDao.streamAssets(since, builder::add);
+		return builder.build(version, now);
+	}
+
+	/**
+	 * @return true if the snapshot is enabled and has been loaded since startup, so that queries can be
+	 *     answered from it
+	 */
+	public boolean isReady() {
+		return snapshot != null;
+	}
+
+	/**
+	 * @return Current AssetSnapshot, null until the first refresh
+	 */
+	public AssetSnapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * @return Number of times the snapshot was replaced since startup
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+
+}
@@ -6,28 +6,28 @@ package com.nplab.extension.dashboard.service;
 
 import org.joda.time.DateTime;
 
+import com.nplab.extension.dao.AssetCriteria;
 import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DailyCount;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
 
 public class CasesCount {
     private long internalCasesCount;
     private long externalCasesCount;
 
     /**
-     * Returns internal and external cases being processed in a given time interval
-     * @param to End date of the time interval where cases are counted
-     * @param from Start date of the time interval where cases are counted
-     * @param assetSummaryDao Data Access Object for asset_summary table in TrackerDb
+     * Stores the internal and external cases registered in a given time interval
+     * @param internalCasesCount Number of cases registered internally
+     * @param externalCasesCount Number of cases registered externally
      */
-    public CasesCount(String to, String from, AssetSummaryDao assetSummaryDao) {
-        this.internalCasesCount = assetSummaryDao.countByCriteria(
-                "a.npNumber not like 'X%' AND a.startTime BETWEEN '"+ from + "' AND '" + to + "'");
-
-        this.externalCasesCount = assetSummaryDao.countByCriteria(
-                "a.npNumber like 'X%' AND a.startTime BETWEEN '" +
-                        from + "' AND '" + to + "'");
+    public CasesCount(long internalCasesCount, long externalCasesCount) {
+        this.internalCasesCount = internalCasesCount;
+        this.externalCasesCount = externalCasesCount;
     }
 
     /**
@@ -37,12 +37,30 @@ public class CasesCount {
      * @return List of CasesCount objects
      */
     public static List<CasesCount> findDailyCount(int days, AssetSummaryDao assetSummaryDao) {
+        return findDailyCount(days, assetSummaryDao::countDailyByOrigin);
+    }
+
+    /**
+     * Returns internal and external cases registered each day for the number of days specified
+     * @param days Number of days, counting of cases is needed
+     * @param dailyCounter Counter of the cases registered each day from the start of a day to the start of another
+     * @return List of CasesCount objects
+     */
+    static List<CasesCount> findDailyCount(int days, BiFunction<DateTime, DateTime, List<DailyCount>> dailyCounter) {
         List<CasesCount> casesCount = new ArrayList<>();
         DateTime currentTime = new DateTime();
 
+        // The whole window is counted with one grouped query; days without any case are absent from it
+        Map<String, DailyCount> countByDay = new HashMap<>();
+        DateTime today = currentTime.withTimeAtStartOfDay();
+        for (DailyCount dailyCount : dailyCounter.apply(today.minusDays(days), today)) {
+            countByDay.put(dailyCount.getDay(), dailyCount);
+        }
+
         for (int i = 1; i <= days; i ++) {
-            casesCount.add(new CasesCount(currentTime.minusDays(i - 1).toString().substring(0, 10),
-                    currentTime.minusDays(i).toString().substring(0, 10), assetSummaryDao));
+            DailyCount dailyCount = countByDay.get(currentTime.minusDays(i).toString().substring(0, 10));
+            casesCount.add((dailyCount == null) ? new CasesCount(0, 0)
+                    : new CasesCount(dailyCount.getInternalCount(), dailyCount.getExternalCount()));
         }
 
         return casesCount;
@@ -54,12 +72,17 @@ public class CasesCount {
      * @return Number of cases registered in the current month
      */
     public static long countCurrentMonth(AssetSummaryDao assetSummaryDao) {
-        DateTime today = new DateTime();
-        String todayDate = today.toString().substring(0, 10);
+        return countCurrentMonth(startedBetween(assetSummaryDao));
+    }
 
-        return assetSummaryDao.countByCriteria(
-                "a.startTime >= '" + todayDate.substring(0, 7) + "-01'"
-                        + " AND a.startTime <= '" + todayDate + "'");
+    /**
+     * @param counter Counter of the cases registered between two instants
+     * @return Number of cases registered in the current month
+     */
+    static long countCurrentMonth(BiFunction<DateTime, DateTime, Long> counter) {
+        DateTime today = new DateTime().withTimeAtStartOfDay();
+
+        return counter.apply(today.withDayOfMonth(1), today);
     }
 
     /**
@@ -68,11 +91,23 @@ public class CasesCount {
      * @return Number of cases registered in the current year
      */
     public static long countCurrentYear(AssetSummaryDao assetSummaryDao) {
+        return countCurrentYear(startedBetween(assetSummaryDao));
+    }
+
+    /**
+     * @param counter Counter of the cases registered between two instants
+     * @return Number of cases registered in the current year
+     */
+    static long countCurrentYear(BiFunction<DateTime, DateTime, Long> counter) {
         DateTime today = new DateTime("2020-02-28");
-        String todayDate = today.toString().substring(0, 10);
-        return assetSummaryDao.countByCriteria(
-                "a.startTime >= '" + todayDate.substring(0,4) + "-01-01'"
-                        + " AND a.startTime <= '" + todayDate + "'");
+        return counter.apply(today.withDayOfYear(1), today);
+    }
+
+    // Counts the cases registered at or after the first instant and at or before the second one
+    private static BiFunction<DateTime, DateTime, Long> startedBetween(AssetSummaryDao assetSummaryDao) {
+        return (from, to) -> assetSummaryDao.countByCriteria(AssetCriteria.all()
+                .startedOnOrAfter(from)
+                .startedOnOrBefore(to));
     }
 
     @Override
@@ -1,30 +1,47 @@
 /**
- * Service class for data summary in terms of mean, maximum
+ * Service class for data summary in terms of mean, maximum, minimum, count and standard deviation
  * @author Vaibhavi Lokagaonkar
  */
 
 package com.nplab.extension.dashboard.service;
 
+import com.nplab.extension.dao.AssetCriteria;
 import com.nplab.extension.dao.AssetSummaryDao;
 import com.nplab.extension.db.AssetSummary;
+import com.nplab.extension.db.ColumnStats;
 import org.joda.time.DateTime;
 
 public class DataSummary {
     private String stat;
     private double mean;
     private int max;
+    private int min;
+    private long count;
+    private double stddev;
 
     /**
-     * Stores the mean and maximum value of the stat given in the parameter
+     * Stores the mean, maximum, minimum, count and standard deviation of the stat given in the parameter,
+     * all found with a single query
      * @param stat Column name in the asset_summary table which is to be summarised
      * @param assetSummaryDao Data Access Object for asset_summary table in TrackerDb
      * @param criteria Certain condition on the rows of the column to be considered
      */
-    public DataSummary(String stat, AssetSummaryDao assetSummaryDao, String criteria) {
-        this.stat = stat;
-        this.mean = assetSummaryDao.findMean(stat, criteria);
-        this.max = assetSummaryDao.findMax(stat, criteria);
+    public DataSummary(String stat, AssetSummaryDao assetSummaryDao, AssetCriteria criteria) {
+        this(stat, assetSummaryDao.findColumnStats(stat, criteria));
+    }
 
+    /**
+     * Stores the mean, maximum, minimum, count and standard deviation of the stat given in the parameter
+     * @param stat Column name in the asset_summary table which is summarised
+     * @param stats ColumnStats of the column
+     */
+    public DataSummary(String stat, ColumnStats stats) {
+        this.stat = stat;
+        this.mean = stats.getMean();
+        this.max = stats.getMax();
+        this.min = stats.getMin();
+        this.count = stats.getCount();
+        this.stddev = stats.getStddev();
     }
 
 	public double getMean() {
@@ -35,11 +52,26 @@ public class DataSummary {
 		return max;
 	}
 
+	public int getMin() {
+		return min;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getStddev() {
+		return stddev;
+	}
+
     @Override
     public String toString() {
         return "DataSummary{" +
                 ", mean=" + mean +
                 ", max=" + max +
+                ", min=" + min +
+                ", count=" + count +
+                ", stddev=" + stddev +
                 '}';
     }
 }
\ No newline at end of file
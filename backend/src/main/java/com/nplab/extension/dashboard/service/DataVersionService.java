@@ -0,0 +1,105 @@
+/**
+ * Service class providing the ETag and Last-Modified time of dashboard responses, derived from the DataVersion
+ * of asset_summary and the current date, so that polling clients get 304 Not Modified while nothing has changed
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DataVersion;
+
+@Service
+public class DataVersionService {
+	private final Logger log = LoggerFactory.getLogger(DataVersionService.class);
+
+	private AssetSummaryDao assetSummaryDao;
+	private CacheManager cacheManager;
+	private AssetRollupRefresher assetRollupRefresher;
+	private AssetSnapshotRefresher assetSnapshotRefresher;
+	private long ttlMillis;
+
+	private DataVersion version;
+	// Refreshes of the rollup and of the snapshot responses may be answered from, which only ever grow
+	private long generation;
+	private long checkedAt;
+	private long changedAt;
+
+	@Autowired
+	public DataVersionService(AssetSummaryDao assetSummaryDao, CacheManager cacheManager,
+			AssetRollupRefresher assetRollupRefresher, AssetSnapshotRefresher assetSnapshotRefresher,
+			@Value("${dashboard.data-version.ttl-seconds:5}") long ttlSeconds) {
+		this.assetSummaryDao = assetSummaryDao;
+		this.cacheManager = cacheManager;
+		this.assetRollupRefresher = assetRollupRefresher;
+		this.assetSnapshotRefresher = assetSnapshotRefresher;
+		this.ttlMillis = ttlSeconds * 1000;
+	}
+
+	/**
+	 * Reads the DataVersion of asset_summary, at most once per configured time to live. When it, the rollup or
+	 * the snapshot has changed since the previous read, the dashboard caches are cleared so that responses tagged with the
+	 * new version are computed from the new data
+	 * @return Current DataVersion
+	 */
+	public synchronized DataVersion getDataVersion() {
+		long now = System.currentTimeMillis();
+		if (version == null || now - checkedAt >= ttlMillis) {
+			DataVersion current = assetSummaryDao.findDataVersion();
+			long refreshes = assetRollupRefresher.getGeneration() + assetSnapshotRefresher.getGeneration();
+			if (!current.equals(version) || refreshes != generation) {
+				if (version != null) {
+					log.debug("asset_summary changed from {} to {}, generation {}", version, current, refreshes);
+					for (String name : cacheManager.getCacheNames()) {
+						Cache cache = cacheManager.getCache(name);
+						if (cache != null) {
+							cache.clear();
+						}
+					}
+				}
+				version = current;
+				generation = refreshes;
+				changedAt = now;
+			}
+			checkedAt = now;
+		}
+		return version;
+	}
+
+	/**
+	 * Responses also depend on the current date (e.g. pending cases of the last 90 days), so the date is part of the
+	 * tag, as is the generation of the rollup or snapshot some of them are answered from. The tag is made of these
+	 * values themselves rather than a hash of them, so that different data never has the same tag
+	 * @return ETag of dashboard responses
+	 */
+	public String getETag() {
+		DataVersion current = getDataVersion();
+		long refreshes;
+		synchronized (this) {
+			refreshes = generation;
+		}
+		return Long.toHexString(current.getMaxStartTime()) + "-" + Long.toHexString(current.getMaxEndTime()) + "-" +
+				Long.toHexString(current.getCount()) + "-" + Long.toHexString(refreshes) + "-" +
+				new LocalDate().toString("yyyyMMdd");
+	}
+
+	/**
+	 * @return Time in milliseconds the current DataVersion was first read, or the start of today if later
+	 */
+	public long getLastModified() {
+		getDataVersion();
+		synchronized (this) {
+			return Math.max(changedAt, new DateTime().withTimeAtStartOfDay().getMillis());
+		}
+	}
+
+}
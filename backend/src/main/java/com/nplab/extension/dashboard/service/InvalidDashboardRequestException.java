@@ -0,0 +1,20 @@
+/**
+ * Exception thrown by the services of the dashboard for arguments of a request they cannot answer, such as an
+ * unknown column or request type, a page size or page cursor out of range or a partial time interval. Only this
+ * exception is answered with 400 Bad Request, see DashboardExceptionHandler
+ */
+
+package com.nplab.extension.dashboard.service;
+
+public class InvalidDashboardRequestException extends RuntimeException {
+	private static final long serialVersionUID = 1L;
+
+	public InvalidDashboardRequestException(String message) {
+		super(message);
+	}
+
+	public InvalidDashboardRequestException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
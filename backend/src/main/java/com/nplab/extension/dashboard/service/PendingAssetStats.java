@@ -5,45 +5,41 @@
 
 package com.nplab.extension.dashboard.service;
 
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.joda.time.DateTime;
 
+import com.nplab.extension.dao.AssetCriteria;
 import com.nplab.extension.dao.AssetSummaryDao;
 import com.nplab.extension.db.PendingAsset;
 
 public class PendingAssetStats {
+	// Largest page of pending cases returned at once
+	static final int MAX_PAGE_SIZE = 1000;
+
 	private AssetSummaryDao assetSummaryDao;
 	
 	public PendingAssetStats(AssetSummaryDao assetSummaryDao) {
 		this.assetSummaryDao = assetSummaryDao;
 	}
 	
-	private String generateEvenCriteria() {
-		return "a.npNumber LIKE '%0/%' "
-				+ "OR a.npNumber LIKE '%2/%' OR a.npNumber LIKE '%4/%' " 
-				+ "OR a.npNumber LIKE '%6/%' OR a.npNumber LIKE '%8/%'";
-	}
-	
-	private String generateOddCriteria() {
-		return "a.npNumber LIKE '%1/%' "
-				+ "OR a.npNumber LIKE '%3/%' OR a.npNumber LIKE '%5/%' " 
-				+ "OR a.npNumber LIKE '%7/%' OR a.npNumber LIKE '%9/%'";
-	}
-
 	/**
 	 * @return List of all pending asset details
 	 */
 	public List<PendingAsset> findPendingAssets() {
-		return this.assetSummaryDao.findPendingAssets("");
+		return this.assetSummaryDao.findPendingAssets(AssetCriteria.all());
 	}
 
 	/**
 	 * @return Number of pending assets
 	 */
 	public long findPendingAssetsCount() {
-		return this.assetSummaryDao.countByCriteria("a.endTime IS NULL");
+		return this.assetSummaryDao.countByCriteria(AssetCriteria.all().pending());
 	}
 
 	/**
@@ -53,9 +49,7 @@ public class PendingAssetStats {
 	 * @return List of pending assets
 	 */
 	public List<PendingAsset> findPendingCasesByOrigin(String origin) {
-		String npNumCriteria = (origin.equals("internal")) ? 
-				"AND a.npNumber NOT LIKE 'X%'" :  "AND a.npNumber LIKE 'X%'";
-		return this.assetSummaryDao.findPendingAssets(npNumCriteria);
+		return this.assetSummaryDao.findPendingAssets(AssetCriteria.all().origin(origin));
 	}
 
 	/**
@@ -66,13 +60,114 @@ public class PendingAssetStats {
 	 * @return List of pending cases
 	 */
 	public List<PendingAsset> findPendingCasesByOriginAndParity(String origin, String parity) {
-		String npNumCriteria = (origin.equals("internal")) ? 
-				"AND a.npNumber NOT LIKE 'X%' AND (" :  "AND a.npNumber LIKE 'X%' AND (";
-		npNumCriteria += ((parity.equals("even")) ? generateEvenCriteria() : generateOddCriteria()) + ")";
-		return this.assetSummaryDao.findPendingAssets(npNumCriteria);
+		return this.assetSummaryDao.findPendingAssets(AssetCriteria.all().originAndParity(origin, parity));
 		
 	}
 
+	/**
+	 * Returns a page of the pending cases, optionally only those registered internally or externally and with an
+	 * odd or even NP number. Pages are keyed on the start time and NP number of the last case of the previous
+	 * page, so that every page costs the same whatever its position in the list
+	 * @param origin The place where case is registered i.e. internal or external, or null for all cases
+	 * @param parity Parity of NP number whether odd or even, or null for all cases
+	 * @param after Cursor returned with the previous page, or null for the first page
+	 * @param size Number of pending cases in the page, at most MAX_PAGE_SIZE
+	 * @return PendingPage of pending cases with the cursor of the next page
+	 */
+	public PendingPage findPendingAssetsPage(String origin, String parity, String after, int size) {
+		if (size < 1) {
+			throw new InvalidDashboardRequestException("Page size must be positive");
+		}
+		int pageSize = Math.min(size, MAX_PAGE_SIZE);
+		AssetCriteria criteria = pendingCriteria(origin, parity);
+		if (after != null) {
+			PendingAsset last = decodeCursor(after);
+			criteria.startedAfterKey(last.getStartDateTime(), last.getNpNumber());
+		}
+
+		// One more case than the page holds tells whether there is a next page
+		List<PendingAsset> assets = this.assetSummaryDao.findPendingAssets(criteria, pageSize + 1);
+		if (assets.size() <= pageSize) {
+			return new PendingPage(assets, null);
+		}
+		List<PendingAsset> page = new ArrayList<>(assets.subList(0, pageSize));
+		return new PendingPage(page, encodeCursor(page.get(pageSize - 1)));
+	}
+
+	/**
+	 * Passes the pending cases one at a time to the consumer, optionally only those registered internally or
+	 * externally and with an odd or even NP number
+	 * @param origin The place where case is registered i.e. internal or external, or null for all cases
+	 * @param parity Parity of NP number whether odd or even, or null for all cases
+	 * @param consumer Consumer called with each pending case, in startTime and npNumber order
+	 */
+	public void streamPendingAssets(String origin, String parity, Consumer<PendingAsset> consumer) {
+		this.assetSummaryDao.streamPendingAssets(pendingCriteria(origin, parity), consumer);
+	}
+
+	private static AssetCriteria pendingCriteria(String origin, String parity) {
+		if (origin == null) {
+			return AssetCriteria.all();
+		}
+		return (parity == null) ? AssetCriteria.all().origin(origin) : AssetCriteria.all().originAndParity(origin, parity);
+	}
+
+	// The cursor is the start time in milliseconds and the NP number of the last case of a page, base64 encoded
+	static String encodeCursor(PendingAsset last) {
+		String key = last.getStartDateTime().getMillis() + "|" + last.getNpNumber();
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(key.getBytes(StandardCharsets.UTF_8));
+	}
+
+	// The case the cursor was encoded from, with its NP number and start time only
+	static PendingAsset decodeCursor(String cursor) {
+		String key;
+		try {
+			key = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+		} catch (IllegalArgumentException e) {
+			throw new InvalidDashboardRequestException("Invalid page cursor " + cursor, e);
+		}
+		int separator = key.indexOf('|');
+		if (separator < 1) {
+			throw new InvalidDashboardRequestException("Invalid page cursor " + cursor);
+		}
+		long startMillis;
+		try {
+			startMillis = Long.parseLong(key.substring(0, separator));
+		} catch (NumberFormatException e) {
+			throw new InvalidDashboardRequestException("Invalid page cursor " + cursor, e);
+		}
+		return new PendingAsset(key.substring(separator + 1), null, new DateTime(startMillis));
+	}
+
+	/**
+	 * Counts the pending cases lying in each of the given time intervals with a single query
+	 * @param startDays List of starting times of time intervals where pending cases are to be counted
+	 * @param endDays List of ending times of time intervals where pending cases are to be counted
+	 * @param lowerInclusive Whether a case registered exactly at the older end of an interval lies in it
+	 * @param criteria Specification of the pending cases to be counted (such as origin)
+	 * @return List of number of pending cases in each interval
+	 */
+	private List<Long> countPendingByTime(List<Integer> startDays, List<Integer> endDays, boolean lowerInclusive,
+			AssetCriteria criteria) {
+		if (startDays.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		List<AssetCriteria> buckets = new ArrayList<>();
+		DateTime today = new DateTime().withTimeAtStartOfDay();
+		for (int i = 0; i < startDays.size(); i ++) {
+			DateTime startTime = today.minusDays(startDays.get(i));
+			DateTime endTime = today.minusDays(endDays.get(i));
+			buckets.add((lowerInclusive ? AssetCriteria.all().startedOnOrAfter(endTime)
+					: AssetCriteria.all().startedAfter(endTime)).startedOnOrBefore(startTime));
+		}
+
+		// Restricting the scan to the span covered by all intervals lets the start_time index be used
+		return assetSummaryDao.countByBuckets(buckets, criteria.pending()
+				.startedOnOrAfter(today.minusDays(Collections.max(endDays)))
+				.startedOnOrBefore(today.minusDays(Collections.min(startDays))));
+	}
+
 	/**
 	 * Returns the list of number of (origin based) pending cases in different time intervals
 	 * @param type The place where case is registered i.e. internal or external
@@ -81,18 +176,7 @@ public class PendingAssetStats {
 	 * @return List of number of pending cases
 	 */
 	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays,String type) {
-		List<Long> pendingCount = new ArrayList<>();
-		DateTime currTime = new DateTime();
-		String npNumCriteria = (type == "internal") ? "a.npNumber NOT LIKE 'X%'" : "a.npNumber LIKE 'X%'";
-		
-		for (int i = 0; i < startDays.size(); i ++) {
-			String startTime = currTime.minusDays(startDays.get(i)).toString().substring(0, 10);
-			String endTime = currTime.minusDays(endDays.get(i)).toString().substring(0, 10);
-			pendingCount.add(assetSummaryDao.countByCriteria("a.endTime IS NULL AND ('" +
-					endTime + "' < a.startTime AND a.startTime <= '" + startTime + "') AND " + npNumCriteria));
-		}
-		
-		return pendingCount;
+		return countPendingByTime(startDays, endDays, false, AssetCriteria.all().origin(type));
 	}
 
 	/**
@@ -104,20 +188,7 @@ public class PendingAssetStats {
 	 * @return List of number of pending cases
 	 */
 	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays,String type, String parity) {
-		List<Long> pendingCount = new ArrayList<>();
-		DateTime currTime = new DateTime();
-		String npNumCriteria = (type.equals("internal")) ? "a.npNumber NOT LIKE 'X%'" : "a.npNumber LIKE 'X%'";
-		String parityCriteria = (parity.equals("even")) ? generateEvenCriteria() : generateOddCriteria();
-		
-		for (int i = 0; i < startDays.size(); i ++) {
-			String startTime = currTime.minusDays(startDays.get(i)).toString().substring(0, 10);
-			String endTime = currTime.minusDays(endDays.get(i)).toString().substring(0, 10);
-			pendingCount.add(assetSummaryDao.countByCriteria("a.endTime IS NULL AND ('" +
-					endTime + "' < a.startTime AND a.startTime <= '" + startTime + "') AND " + npNumCriteria + 
-					" AND (" + parityCriteria + ")"));
-		}
-		
-		return pendingCount;
+		return countPendingByTime(startDays, endDays, false, AssetCriteria.all().originAndParity(type, parity));
 	}
 
 	/**
@@ -127,17 +198,7 @@ public class PendingAssetStats {
 	 * @return List of number of pending cases
 	 */
 	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays) {
-
-		List<Long> pendingCount = new ArrayList<>();
-		DateTime currTime = new DateTime();
-		for (int i = 0; i < startDays.size(); i ++) {
-			String startTime = currTime.minusDays(startDays.get(i)).toString().substring(0, 10);
-			String endTime = currTime.minusDays(endDays.get(i)).toString().substring(0, 10);
-			pendingCount.add(assetSummaryDao.countByCriteria("a.endTime IS NULL AND '" +
-					endTime + "' <= a.startTime AND a.startTime <= '" + startTime + "'"));
-		}
-		
-		return pendingCount;
+		return countPendingByTime(startDays, endDays, true, AssetCriteria.all());
 	}
 
 }
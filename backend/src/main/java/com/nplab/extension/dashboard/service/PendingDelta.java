@@ -0,0 +1,38 @@
+/**
+ * Class for the changes to the list of pending cases between two checks of PendingEventsService
+ * Contains getters and overridden toString()
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.List;
+
+import com.nplab.extension.db.PendingAsset;
+
+public class PendingDelta {
+	private List<PendingAsset> registered;
+	private List<String> completed;
+
+	/**
+	 * @param registered Pending cases which were not in the list at the previous check
+	 * @param completed NP numbers of the cases which were completed since the previous check
+	 */
+	public PendingDelta(List<PendingAsset> registered, List<String> completed) {
+		this.registered = registered;
+		this.completed = completed;
+	}
+
+	public List<PendingAsset> getRegistered() {
+		return registered;
+	}
+
+	public List<String> getCompleted() {
+		return completed;
+	}
+
+	@Override
+	public String toString() {
+		return "PendingDelta [registered=" + registered + ", completed=" + completed + "]";
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * Service class pushing the number of pending cases and the changes to the pending list to subscribed clients as
+ * server-sent events. A single scheduled change detector over asset_summary serves every subscriber, instead of
+ * every open dashboard polling the pending endpoints
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import org.joda.time.DateTime;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import com.nplab.extension.dao.AssetCriteria;
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DataVersion;
+import com.nplab.extension.db.PendingAsset;
+
+@Service
+public class PendingEventsService {
+	private final Logger log = LoggerFactory.getLogger(PendingEventsService.class);
+
+	private AssetSummaryDao assetSummaryDao;
+	private long timeoutMillis;
+	private List<SseEmitter> emitters = new CopyOnWriteArrayList<>();
+
+	// Guards the last count, so that a subscriber is never sent an older count after a newer one
+	private final Object countLock = new Object();
+	private long lastCount = -1;
+
+	// State of the previous check, only touched by the scheduler thread. Changes are read from the latest start and
+	// end time of the previous DataVersion on, skipping the cases read at or after them that were already sent
+	private DataVersion lastVersion;
+	private Set<String> sentSinceStart;
+	private Set<String> sentSinceEnd;
+
+	@Autowired
+	public PendingEventsService(AssetSummaryDao assetSummaryDao,
+			@Value("${dashboard.pending-events.timeout-ms:1800000}") long timeoutMillis) {
+		this.assetSummaryDao = assetSummaryDao;
+		this.timeoutMillis = timeoutMillis;
+	}
+
+	/**
+	 * Subscribes a client, which is sent the number of pending cases found by the last check right away, or by the
+	 * next check when there were no subscribers at the last one. Clients reconnect once the configured timeout has
+	 * passed
+	 * @return SseEmitter sending "count" events with the number of pending cases and "delta" events with
+	 *     PendingDelta objects
+	 */
+	public SseEmitter subscribe() {
+		SseEmitter emitter = new SseEmitter(timeoutMillis);
+		emitter.onCompletion(() -> emitters.remove(emitter));
+		emitter.onTimeout(() -> emitters.remove(emitter));
+		emitter.onError(e -> emitters.remove(emitter));
+		synchronized (countLock) {
+			emitters.add(emitter);
+			if (lastCount >= 0) {
+				send(emitter, SseEmitter.event().name("count").data(lastCount));
+			}
+		}
+		return emitter;
+	}
+
+	/**
+	 * Checks asset_summary for changes while there are subscribers, and sends them the number of pending cases
+	 * if it has changed and the cases registered and completed since the previous check, if any. Only the cases
+	 * registered or completed from the latest start and end time of the previous check on are read. Removed cases,
+	 * cases registered without a start time and times changed to earlier ones show in the count only
+	 */
+	@Scheduled(fixedDelayString = "${dashboard.pending-events.poll-ms:5000}")
+	public void detectChanges() {
+		synchronized (countLock) {
+			if (emitters.isEmpty()) {
+				// Nothing is sent to later subscribers for changes made while there were none
+				lastVersion = null;
+				lastCount = -1;
+				return;
+			}
+		}
+
+		DataVersion version = assetSummaryDao.findDataVersion();
+		if (version.equals(lastVersion)) {
+			return;
+		}
+		long count = assetSummaryDao.countByCriteria(AssetCriteria.all().pending());
+
+		// The first check only records the cases at the latest times, which are not changes
+		boolean first = lastVersion == null;
+		DateTime startMark = new DateTime(version.getMaxStartTime());
+		DateTime since = first ? startMark : new DateTime(lastVersion.getMaxStartTime());
+		List<PendingAsset> registered = new ArrayList<>();
+		Set<String> sentSinceStartMark = new HashSet<>();
+		for (PendingAsset asset : assetSummaryDao.findPendingAssetsStartedSince(since)) {
+			if (!first && !sentSinceStart.contains(asset.getNpNumber())) {
+				registered.add(asset);
+			}
+			if (!asset.getStartDateTime().isBefore(startMark)) {
+				sentSinceStartMark.add(asset.getNpNumber());
+			}
+		}
+
+		DateTime endMark = new DateTime(version.getMaxEndTime());
+		since = first ? endMark : new DateTime(lastVersion.getMaxEndTime());
+		List<String> completed = new ArrayList<>();
+		Set<String> sentSinceEndMark = new HashSet<>();
+		for (Object[] row : assetSummaryDao.findCompletedSince(since)) {
+			String npNumber = (String) row[0];
+			if (!first && !sentSinceEnd.contains(npNumber)) {
+				completed.add(npNumber);
+			}
+			if (!((DateTime) row[1]).isBefore(endMark)) {
+				sentSinceEndMark.add(npNumber);
+			}
+		}
+
+		synchronized (countLock) {
+			PendingDelta delta = new PendingDelta(registered, completed);
+			for (SseEmitter emitter : emitters) {
+				if (count != lastCount) {
+					send(emitter, SseEmitter.event().name("count").data(count));
+				}
+				if (!registered.isEmpty() || !completed.isEmpty()) {
+					send(emitter, SseEmitter.event().name("delta").data(delta));
+				}
+			}
+			lastCount = count;
+		}
+
+		lastVersion = version;
+		sentSinceStart = sentSinceStartMark;
+		sentSinceEnd = sentSinceEndMark;
+	}
+
+	/**
+	 * Sends a comment to every subscriber, so that proxies closing connections idle for longer keep them open while
+	 * nothing changes
+	 */
+	@Scheduled(fixedDelayString = "${dashboard.pending-events.heartbeat-ms:15000}")
+	public void sendHeartbeat() {
+		for (SseEmitter emitter : emitters) {
+			send(emitter, SseEmitter.event().comment("heartbeat"));
+		}
+	}
+
+	private void send(SseEmitter emitter, SseEventBuilder event) {
+		try {
+			emitter.send(event);
+		} catch (IOException | IllegalStateException e) {
+			// The client has gone away
+			log.debug("Dropping pending events subscriber: {}", e.getMessage());
+			emitters.remove(emitter);
+			emitter.completeWithError(e);
+		}
+	}
+
+}
@@ -0,0 +1,38 @@
+/**
+ * Class for a page of pending cases, with the cursor from which the next page is requested
+ * Contains getters and overridden toString()
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.List;
+
+import com.nplab.extension.db.PendingAsset;
+
+public class PendingPage {
+	private List<PendingAsset> items;
+	private String next;
+
+	/**
+	 * @param items Pending cases of the page, in startTime and npNumber order
+	 * @param next Cursor to pass as the after parameter for the next page, null if this is the last page
+	 */
+	public PendingPage(List<PendingAsset> items, String next) {
+		this.items = items;
+		this.next = next;
+	}
+
+	public List<PendingAsset> getItems() {
+		return items;
+	}
+
+	public String getNext() {
+		return next;
+	}
+
+	@Override
+	public String toString() {
+		return "PendingPage [items=" + items + ", next=" + next + "]";
+	}
+
+}
@@ -0,0 +1,99 @@
+/**
+ * Service class holding the time interval a report is generated for. Instances are immutable so that
+ * concurrent report requests never see each other's interval
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.Objects;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+public final class ReportContext {
+	private final String startTime;
+	private final String endTime;
+
+	/**
+	 * @param startTime Start date of the time interval where cases are counted in the form YYYY-MM-DD
+	 * @param endTime End date of the time interval where cases are counted in the form YYYY-MM-DD
+	 * @throws InvalidDashboardRequestException If either date is not in the form YYYY-MM-DD
+	 */
+	public ReportContext(String startTime, String endTime) {
+		this.startTime = checkDate(startTime, "startTime");
+		this.endTime = checkDate(endTime, "endTime");
+	}
+
+	/**
+	 * Returns the report context for the given interval, or for the current year till today when neither
+	 * end of the interval is given
+	 * @param startTime Start date of the time interval in the form YYYY-MM-DD, or null
+	 * @param endTime End date of the time interval in the form YYYY-MM-DD, or null
+	 * @return ReportContext for the interval
+	 * @throws InvalidDashboardRequestException If only one end of the interval is given
+	 */
+	public static ReportContext ofOrCurrentYear(String startTime, String endTime) {
+		if (startTime != null && endTime != null) {
+			return new ReportContext(startTime, endTime);
+		}
+		if (startTime != null || endTime != null) {
+			throw new InvalidDashboardRequestException("startTime and endTime must be given together");
+		}
+		String today = new DateTime().toString().substring(0, 10);
+		return new ReportContext(today.substring(0, 4) + "-01-01", today);
+	}
+
+	// The dates come from the request, so they are parsed once here instead of failing when the report is computed
+	private static String checkDate(String date, String name) {
+		try {
+			LocalDate.parse(Objects.requireNonNull(date, name));
+		} catch (IllegalArgumentException e) {
+			throw new InvalidDashboardRequestException("Invalid " + name + " " + date, e);
+		}
+		return date;
+	}
+
+	public String getStartTime() {
+		return startTime;
+	}
+
+	public String getEndTime() {
+		return endTime;
+	}
+
+	/**
+	 * @return Start of the first day of the time interval
+	 */
+	public DateTime getStartDate() {
+		return LocalDate.parse(startTime).toDateTimeAtStartOfDay();
+	}
+
+	/**
+	 * @return Start of the last day of the time interval
+	 */
+	public DateTime getEndDate() {
+		return LocalDate.parse(endTime).toDateTimeAtStartOfDay();
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof ReportContext)) {
+			return false;
+		}
+		ReportContext other = (ReportContext) o;
+		return startTime.equals(other.startTime) && endTime.equals(other.endTime);
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(startTime, endTime);
+	}
+
+	@Override
+	public String toString() {
+		return "ReportContext [startTime=" + startTime + ", endTime=" + endTime + "]";
+	}
+}
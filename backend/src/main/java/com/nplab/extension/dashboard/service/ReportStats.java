@@ -6,85 +6,120 @@
 package com.nplab.extension.dashboard.service;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
+import com.nplab.extension.dao.AssetCriteria;
 import com.nplab.extension.dao.AssetSummaryDao;
 import com.nplab.extension.db.RequestCount;
 
 public class ReportStats {
-	private AssetSummaryDao assetSummaryDao;
-	private String startTime;
-	private String endTime;
+	private final AssetSummaryDao assetSummaryDao;
+	private final List<String> sampleTypes;
 	
-	private static List<String> sampleTypes = List.of("Tumor", "Nerve", "Muscle", 
-			"Multiple Biopsies", "Epilepsy", "Block", "Slides", "Other");
-	
-	public ReportStats(AssetSummaryDao assetSummaryDao) {
+	/**
+	 * @param assetSummaryDao Data Access Object for asset_summary table in TrackerDb
+	 * @param sampleTypes Biopsy types reported in the sample type breakout, in the order they are reported
+	 */
+	public ReportStats(AssetSummaryDao assetSummaryDao, List<String> sampleTypes) {
 		this.assetSummaryDao = assetSummaryDao;
+		this.sampleTypes = List.copyOf(sampleTypes);
 	}
 
-	public void setStartTime(String startTime) {
-		this.startTime = startTime;
-	}
-
-	public void setEndTime(String endTime) {
-		this.endTime = endTime;
+	/**
+	 * @param context Time interval of the report
+	 * @return Criteria for the cases being processed at some point of the time interval
+	 */
+	private AssetCriteria processedDuring(ReportContext context) {
+		return AssetCriteria.all().processedDuring(context.getStartDate(), context.getEndDate());
 	}
 
 	/**
 	 * Returns a list of number of cases in a given time interval grouped by different biopsy types
-	 * @param startTime Start date of the time interval where cases are counted
-	 * @param endTime End date of the time interval where cases are counted
+	 * @param context Time interval where cases are counted
 	 * @return List of number of cases grouped by biopsy types
 	 */
-	public List<Long> findBreakoutBySampleType(String startTime, String endTime) {
-		List<Long> sampleTypeCount = new ArrayList<>();
-		this.setStartTime(startTime);
-		this.setEndTime(endTime);
+	public List<Long> findBreakoutBySampleType(ReportContext context) {
+		List<AssetCriteria> sampleTypeBuckets = new ArrayList<>();
 		for (String sampleType: sampleTypes) {
-			sampleTypeCount.add(assetSummaryDao
-					.countByDateAndCriteria("a.biopsyType like '%" + sampleType + "%'", this.startTime, this.endTime));
+			sampleTypeBuckets.add(AssetCriteria.all().biopsyType(sampleType));
 		}
 		
-		return sampleTypeCount;
+		// Every biopsy type is counted in the same pass over the cases in the time interval
+		return assetSummaryDao.countByBuckets(sampleTypeBuckets, processedDuring(context));
 	}
 
 	/**
 	 * Returns a list of number of cases of a certain biopsy type with TAT lying in different
 	 * intervals
+	 * @param context Time interval where cases are counted
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param startValues List of start values of the range where TAT of a case should lie to be counted
 	 * @param endValues List of end value of the range where TAT of a case should lie to be counted
 	 * @return List of numbers of cases of a certain biopsy type whose TAT lies in specified intervals
 	 */
-	public List<Long> findSampleBreakoutByTat(String sampleType, List<Integer> startValues, List<Integer> endValues) {
-		List<Long> tatTypeCount = new ArrayList<>();
-		
+	public List<Long> findSampleBreakoutByTat(ReportContext context, String sampleType, List<Integer> startValues, List<Integer> endValues) {
+		if (startValues.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		List<AssetCriteria> tatBuckets = new ArrayList<>();
 		for (int i = 0; i < startValues.size(); i ++) {
-			int start = startValues.get(i);
-			int end = endValues.get(i);
-			tatTypeCount.add(assetSummaryDao
-					.countByDateAndCriteria("a.biopsyType like '%" + sampleType + "%' AND " + 
-							Integer.toString(start) + " <= a.tat AND a.tat <= " + 
-							Integer.toString(end), this.startTime, this.endTime));
+			tatBuckets.add(AssetCriteria.all().tatBetween(startValues.get(i), endValues.get(i)));
 		}
 		
-		return tatTypeCount;
+		// All TAT ranges are counted in the same pass over the cases of the biopsy type
+		return assetSummaryDao.countByBuckets(tatBuckets, processedDuring(context).biopsyType(sampleType)
+				.tatBetween(Collections.min(startValues), Collections.max(endValues)));
+	}
+
+	/**
+	 * Returns the median, 90th and 99th percentile TAT of the cases of a certain biopsy type
+	 * @param context Time interval where cases are considered
+	 * @param sampleType Biopsy type of case for it to be considered
+	 * @return TatPercentiles of the cases of the biopsy type
+	 */
+	public TatPercentiles findTatPercentiles(ReportContext context, String sampleType) {
+		return new TatPercentiles(assetSummaryDao.findTatHistogram(processedDuring(context).biopsyType(sampleType)));
 	}
 
 	/**
 	 * Returns a list of numbers of cases of a certain biopsy type, and TAT within a certain
 	 * range with different special requests/tests
+	 * @param context Time interval where cases are counted
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
 	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
 	 * @return List of numbers of cases of a certain biopsy type, and TAT within a certain range with
 	 * different special requests/tests
 	 */
-	public List<RequestCount> findTatBreakoutByRequests(int tatStart, int tatEnd, String sampleType) {
-		return this.assetSummaryDao.findCountByRequestType("a.biopsyType like '%" + sampleType + "%' AND " + 
-				Integer.toString(tatStart) + " <= a.tat AND a.tat <= " + 
-				Integer.toString(tatEnd) + " GROUP BY a.requestCode", startTime, endTime);
+	public List<RequestCount> findTatBreakoutByRequests(ReportContext context, int tatStart, int tatEnd, String sampleType) {
+		return this.assetSummaryDao.findCountByRequestType(processedDuring(context).biopsyType(sampleType)
+				.tatBetween(tatStart, tatEnd));
+	}
+
+	/**
+	 * Returns the number of cases of a certain biopsy type, and TAT within a certain range, having all of the
+	 * given special requests/tests
+	 * @param context Time interval where cases are counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param requests Request flags the case should all have, from AssetSummaryDao.REQUEST_FLAGS
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param origin The place where case is registered i.e. internal or external, or null for all cases
+	 * @return Number of cases meeting all the conditions
+	 */
+	public long countByRequests(ReportContext context, String sampleType, List<String> requests, int tatStart,
+			int tatEnd, String origin) {
+		AssetCriteria criteria = processedDuring(context).biopsyType(sampleType).tatBetween(tatStart, tatEnd);
+		for (String request : requests) {
+			criteria.hasRequest(request);
+		}
+		if (origin != null) {
+			criteria.origin(origin);
+		}
+
+		return assetSummaryDao.countByCriteria(criteria);
 	}
 
 }
@@ -0,0 +1,96 @@
+/**
+ * Service class answering the daily counts and the report statistics from the asset_daily_rollup and
+ * asset_completed_rollup tables instead of the cases in asset_summary. Being daily rollups, they do not count cases
+ * registered exactly at the start of the last day of an interval, which the queries on asset_summary do. The
+ * reports count the cases completed during the interval, leaving out those still in progress at its end
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.nplab.extension.dao.AssetRollupDao;
+import com.nplab.extension.db.RequestCount;
+
+public class RollupStats {
+	private final AssetRollupDao assetRollupDao;
+	private final List<String> sampleTypes;
+
+	/**
+	 * @param assetRollupDao Data Access Object for asset_daily_rollup and asset_completed_rollup tables in TrackerDb
+	 * @param sampleTypes Biopsy types reported in the sample type breakout, in the order they are reported
+	 */
+	public RollupStats(AssetRollupDao assetRollupDao, List<String> sampleTypes) {
+		this.assetRollupDao = assetRollupDao;
+		this.sampleTypes = List.copyOf(sampleTypes);
+	}
+
+	/**
+	 * @param days Number of days, counting of cases is needed
+	 * @return List of CasesCount objects, as CasesCount.findDailyCount
+	 */
+	public List<CasesCount> findDailyCount(int days) {
+		return CasesCount.findDailyCount(days, assetRollupDao::countDailyByOrigin);
+	}
+
+	/**
+	 * @param time Time over where the cases are counted eg: month or year
+	 * @return Number of cases registered this year or month, as CasesCount.countCurrentMonth and countCurrentYear
+	 */
+	public long countCasesOverTime(String time) {
+		return (time.equals("month")) ? CasesCount.countCurrentMonth(assetRollupDao::countStartedBetween)
+				: CasesCount.countCurrentYear(assetRollupDao::countStartedBetween);
+	}
+
+	/**
+	 * @param context Time interval where cases are counted
+	 * @return List of number of cases grouped by biopsy types, as ReportStats.findBreakoutBySampleType
+	 */
+	public List<Long> findBreakoutBySampleType(ReportContext context) {
+		return assetRollupDao.countByBiopsyTypes(sampleTypes, context.getStartDate(), context.getEndDate());
+	}
+
+	/**
+	 * All TAT ranges are counted from the number of cases having each TAT value
+	 * @param context Time interval where cases are counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param startValues List of start values of the range where TAT of a case should lie to be counted
+	 * @param endValues List of end value of the range where TAT of a case should lie to be counted
+	 * @return List of numbers of cases of a certain biopsy type whose TAT lies in specified intervals, as
+	 *     ReportStats.findSampleBreakoutByTat
+	 */
+	public List<Long> findSampleBreakoutByTat(ReportContext context, String sampleType, List<Integer> startValues,
+			List<Integer> endValues) {
+		if (startValues.isEmpty()) {
+			return new ArrayList<>();
+		}
+
+		return TatPercentiles.countInRanges(assetRollupDao.findTatHistogram(sampleType, context.getStartDate(),
+				context.getEndDate()), startValues, endValues);
+	}
+
+	/**
+	 * @param context Time interval where cases are considered
+	 * @param sampleType Biopsy type of case for it to be considered
+	 * @return TatPercentiles of the cases of the biopsy type, as ReportStats.findTatPercentiles
+	 */
+	public TatPercentiles findTatPercentiles(ReportContext context, String sampleType) {
+		return new TatPercentiles(assetRollupDao.findTatHistogram(sampleType, context.getStartDate(),
+				context.getEndDate()));
+	}
+
+	/**
+	 * @param context Time interval where cases are counted
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @return List of numbers of cases with different special requests/tests, as ReportStats.findTatBreakoutByRequests
+	 */
+	public List<RequestCount> findTatBreakoutByRequests(ReportContext context, int tatStart, int tatEnd,
+			String sampleType) {
+		return assetRollupDao.findCountByRequestType(sampleType, tatStart, tatEnd, context.getStartDate(),
+				context.getEndDate());
+	}
+
+}
@@ -1,49 +1,86 @@
 /**
- * Service Class for making calls to all the methods in the service layer as required
+ * Service Class for making calls to all the methods in the service layer as required. Results are cached
+ * per query for a short time, see DashboardCacheConfiguration. When dashboard.snapshot.enabled is set, queries
+ * are answered from an in-memory snapshot of asset_summary, see SnapshotStats. Otherwise, when
+ * dashboard.rollup.enabled is set, daily counts and reports are answered from the asset_daily_rollup table,
+ * see RollupStats
  * @author Vaibhavi Lokegaonkar
  */
 package com.nplab.extension.dashboard.service;
 
 import java.util.List;
 import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 
 import org.joda.time.DateTime;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.annotation.CacheConfig;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import com.nplab.extension.dao.AssetCriteria;
+import com.nplab.extension.dao.AssetRollupDao;
 import com.nplab.extension.dao.AssetSummaryDao;
 import com.nplab.extension.db.PendingAsset;
 import com.nplab.extension.db.RequestCount;
+import com.nplab.extension.utility.SingleFlight;
 
 @Service
+@CacheConfig(keyGenerator = "dashboardCacheKeyGenerator")
 public class SampleStatsService {
 	private AssetSummaryDao assetSummaryDao;
 	private ReportStats reportStats;
 	private PendingAssetStats pendingAssetsStats;
+	// Answers the daily counts and reports from asset_daily_rollup once the rollup refresher has filled it
+	private RollupStats rollupStats;
+	private AssetRollupRefresher assetRollupRefresher;
+	// Answers the queries from memory once the snapshot refresher has loaded asset_summary
+	private SnapshotStats snapshotStats;
+	private AssetSnapshotRefresher assetSnapshotRefresher;
+	// Concurrent identical requests hitting an empty cache, as when the dashboard loads at shift start, share one query
+	private SingleFlight singleFlight = new SingleFlight();
 	
-	private static Map<String, String> summaryCriteria = Map.ofEntries(Map.entry("tat", "a.tat is not null")); 
+	// Columns which can be summarised, with the criteria on the entries to be considered for each of them
+	private static Map<String, Supplier<AssetCriteria>> summaryCriteria = Map.ofEntries(
+			Map.entry("tat", () -> AssetCriteria.all().hasTat()));
 	
 	@Autowired
-	public SampleStatsService(AssetSummaryDao assetSummaryDao) {
+	public SampleStatsService(AssetSummaryDao assetSummaryDao, AssetRollupDao assetRollupDao,
+			AssetRollupRefresher assetRollupRefresher, AssetSnapshotRefresher assetSnapshotRefresher,
+			@Value("${dashboard.report.sample-types}") List<String> sampleTypes) {
 		this.assetSummaryDao = assetSummaryDao;
-		this.reportStats = new ReportStats(assetSummaryDao);
+		this.reportStats = new ReportStats(assetSummaryDao, sampleTypes);
 		this.pendingAssetsStats = new PendingAssetStats(assetSummaryDao);
+		this.rollupStats = new RollupStats(assetRollupDao, sampleTypes);
+		this.assetRollupRefresher = assetRollupRefresher;
+		this.snapshotStats = new SnapshotStats(assetSnapshotRefresher::getSnapshot, sampleTypes);
+		this.assetSnapshotRefresher = assetSnapshotRefresher;
 	}
 
 	/**
 	 * Calls the findPendingAssets() in PendingAssetStats class
 	 * @return List of all pending assets
 	 */
+	@Cacheable("pendingAssets")
 	public List<PendingAsset> findPendingAssets() {
-		return this.pendingAssetsStats.findPendingAssets();
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingAssets();
+		}
+		return singleFlight.execute(List.of("pendingAssets"), () -> this.pendingAssetsStats.findPendingAssets());
 	}
 
 	/**
 	 * Calls the findPendingAssetsCount() in PendingAssetStats class
 	 * @return Number of pending assets
 	 */
+	@Cacheable("pendingCount")
 	public long countPendingAssets() {
-		return this.pendingAssetsStats.findPendingAssetsCount();
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.countPendingAssets();
+		}
+		return singleFlight.execute(List.of("pendingCount"), () -> this.pendingAssetsStats.findPendingAssetsCount());
 	}
 
 	/**
@@ -52,9 +89,16 @@ public class SampleStatsService {
 	 * @param time Time over where the cases are counted eg: month or year
 	 * @return Number of cases registered this year or month
 	 */
+	@Cacheable("casesOverTime")
 	public long countCasesOverTime(String time) {
-		return (time.equals("month")) ? CasesCount.countCurrentMonth(assetSummaryDao)
-				: CasesCount.countCurrentYear(assetSummaryDao);
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.countCasesOverTime(time);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return rollupStats.countCasesOverTime(time);
+		}
+		return singleFlight.execute(List.of("casesOverTime", time), () -> (time.equals("month"))
+				? CasesCount.countCurrentMonth(assetSummaryDao) : CasesCount.countCurrentYear(assetSummaryDao));
 	}
 
 	/**
@@ -64,7 +108,11 @@ public class SampleStatsService {
 	 * @param endDays List of all ending numbers of all intervals
 	 * @return List of counts of pending cases in all intervals given
 	 */
+	@Cacheable("pendingBreakout")
 	public List<Long> findPendingAssetsBreakout(List<Integer> startDays, List<Integer> endDays) {
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingAssetBreakoutByTime(startDays, endDays);
+		}
 		return this.pendingAssetsStats.findPendingAssetBreakoutByTime(startDays, endDays);
 	}
 
@@ -76,7 +124,11 @@ public class SampleStatsService {
 	 * @param endDays List of all ending numbers of all intervals
 	 * @return List of counts of pending cases in all intervals given
 	 */
+	@Cacheable("pendingBreakout")
 	public List<Long> findPendingAssetsBreakout(List<Integer> startDays, List<Integer> endDays,String type) {
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingAssetBreakoutByTime(startDays, endDays, type);
+		}
 		return this.pendingAssetsStats.findPendingAssetBreakoutByTime(startDays, endDays, type);
 	}
 
@@ -89,7 +141,11 @@ public class SampleStatsService {
 	 * @param endDays List of all ending numbers of all intervals
 	 * @return List of counts of pending cases in all intervals given
 	 */
+	@Cacheable("pendingBreakout")
 	public List<Long> findPendingAssetsBreakout(List<Integer> startDays, List<Integer> endDays,String type, String parity) {
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingAssetBreakoutByTime(startDays, endDays, type, parity);
+		}
 		return this.pendingAssetsStats.findPendingAssetBreakoutByTime(startDays, endDays, type, parity);
 	}
 
@@ -98,7 +154,11 @@ public class SampleStatsService {
 	 * @param origin The place where case is registered internally or externally
 	 * @return List of counts of pending cases in all intervals given
 	 */
+	@Cacheable("pendingByOrigin")
 	public List<PendingAsset> findPendingCasesByOrigin(String origin) {
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingCasesByOrigin(origin);
+		}
 		return this.pendingAssetsStats.findPendingCasesByOrigin(origin);
 	}
 
@@ -108,18 +168,54 @@ public class SampleStatsService {
 	 * @param parity The parity of NP number of asset
 	 * @return List of counts of pending cases in all intervals given
 	 */
+	@Cacheable("pendingByOriginAndParity")
 	public List<PendingAsset> findPendingCasesByOriginAndParity(String origin, String parity) {
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findPendingCasesByOriginAndParity(origin, parity);
+		}
 		return this.pendingAssetsStats.findPendingCasesByOriginAndParity(origin, parity);
 	}
 
+	/**
+	 * Calls findPendingAssetsPage() in PendingAssetStats to find a page of pending cases, optionally of a given type
+	 * and parity
+	 * @param origin The place where case is registered internally or externally, or null for all cases
+	 * @param parity The parity of NP number of asset, or null for all cases
+	 * @param after Cursor returned with the previous page, or null for the first page
+	 * @param size Number of pending cases in the page
+	 * @return PendingPage of pending cases with the cursor of the next page
+	 */
+	@Cacheable("pendingPages")
+	public PendingPage findPendingAssetsPage(String origin, String parity, String after, int size) {
+		return this.pendingAssetsStats.findPendingAssetsPage(origin, parity, after, size);
+	}
+
+	/**
+	 * Calls streamPendingAssets() in PendingAssetStats to pass the pending cases, optionally of a given type and
+	 * parity, one at a time to a consumer. The cases are read from the database as they are consumed and not cached
+	 * @param origin The place where case is registered internally or externally, or null for all cases
+	 * @param parity The parity of NP number of asset, or null for all cases
+	 * @param consumer Consumer called with each pending case
+	 */
+	public void streamPendingAssets(String origin, String parity, Consumer<PendingAsset> consumer) {
+		this.pendingAssetsStats.streamPendingAssets(origin, parity, consumer);
+	}
+
 	/**
 	 * Calls findDailyCount() in CasesCount to find count of all cases on a daily basis for a
 	 * certain number of days
 	 * @param days Number of days from the present day when count is needed
 	 * @return List of CasesCount objects
 	 */
+	@Cacheable("dailyCount")
 	public List<CasesCount> findCasesCount(int days) {
-		return CasesCount.findDailyCount(days, assetSummaryDao);
+		if (assetSnapshotRefresher.isReady()) {
+			return snapshotStats.findDailyCount(days);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return rollupStats.findDailyCount(days);
+		}
+		return singleFlight.execute(List.of("dailyCount", days), () -> CasesCount.findDailyCount(days, assetSummaryDao));
 	}
 
 	/**
@@ -127,9 +223,17 @@ public class SampleStatsService {
 	 * @param toSummarize The column name which has to be summarised
 	 * @return DataSummary containing the mean and maximum
 	 */
+	@Cacheable("dataSummary")
 	public DataSummary summarizeData(String toSummarize) {
-		String startDate = new DateTime().minusDays(14).toString().substring(0, 10);
-		String criteria = summaryCriteria.get(toSummarize) + " AND a.startTime >= '" + startDate + "'";
+		// The column name is part of the query text, so only the known columns are accepted
+		if (!summaryCriteria.containsKey(toSummarize)) {
+			throw new InvalidDashboardRequestException("Cannot summarise " + toSummarize);
+		}
+		DateTime since = new DateTime().withTimeAtStartOfDay().minusDays(14);
+		if (assetSnapshotRefresher.isReady()) {
+			return new DataSummary(toSummarize, snapshotStats.findColumnStats(toSummarize, since));
+		}
+		AssetCriteria criteria = summaryCriteria.get(toSummarize).get().startedOnOrAfter(since);
 
 		return new DataSummary(toSummarize, assetSummaryDao, criteria);
 	}
@@ -137,37 +241,103 @@ public class SampleStatsService {
 	/**
 	 * Calls findBreakoutBySampleType() in ReportStats to find number of cases with different biopsy types
 	 * in a time interval
-	 * @param startTime Starting of the given time interval
-	 * @param endTime Ending of the given time interval
+	 * @param context Time interval where cases are counted
 	 * @return List of counts of all biopsy type cases
 	 */
-	public List<Long> findSampleTypeBreakout(String startTime, String endTime) {
-		return this.reportStats.findBreakoutBySampleType(startTime, endTime);
+	@Cacheable("sampleTypeBreakout")
+	public List<Long> findSampleTypeBreakout(ReportContext context) {
+		if (assetSnapshotRefresher.isReady()) {
+			return this.snapshotStats.findBreakoutBySampleType(context);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return this.rollupStats.findBreakoutBySampleType(context);
+		}
+		return this.reportStats.findBreakoutBySampleType(context);
 	}
 
 	/**
 	 * Calls findSampleBreakoutByTat() from ReportStats for a list of number of cases of a certain biopsy type with TAT lying in different
 	 * intervals
+	 * @param context Time interval where cases are counted
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param startValues List of start values of the range where TAT of a case should lie to be counted
 	 * @param endValues List of end value of the range where TAT of a case should lie to be counted
 	 * @return List of numbers of cases of a certain biopsy type whose TAT lies in specified intervals
 	 */
-	public List<Long> findTatBreakout(String sampleType, List<Integer> startValues, List<Integer> endValues) {
-		return this.reportStats.findSampleBreakoutByTat(sampleType, startValues, endValues);
+	@Cacheable("tatBreakout")
+	public List<Long> findTatBreakout(ReportContext context, String sampleType, List<Integer> startValues, List<Integer> endValues) {
+		if (assetSnapshotRefresher.isReady()) {
+			return this.snapshotStats.findSampleBreakoutByTat(context, sampleType, startValues, endValues);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return this.rollupStats.findSampleBreakoutByTat(context, sampleType, startValues, endValues);
+		}
+		return this.reportStats.findSampleBreakoutByTat(context, sampleType, startValues, endValues);
+	}
+
+	/**
+	 * Calls findTatPercentiles() from ReportStats for the median, 90th and 99th percentile TAT of the cases of a
+	 * certain biopsy type
+	 * @param context Time interval where cases are considered
+	 * @param sampleType Biopsy type of case for it to be considered
+	 * @return TatPercentiles of the cases of the biopsy type
+	 */
+	@Cacheable("tatPercentiles")
+	public TatPercentiles findTatPercentiles(ReportContext context, String sampleType) {
+		if (assetSnapshotRefresher.isReady()) {
+			return this.snapshotStats.findTatPercentiles(context, sampleType);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return this.rollupStats.findTatPercentiles(context, sampleType);
+		}
+		return this.reportStats.findTatPercentiles(context, sampleType);
 	}
 
 	/**
 	 * Calls findTatBreakoutByRequests() from ReportStats for list of numbers of cases of a certain biopsy type, and TAT within a certain
 	 * range with different special requests/tests
+	 * @param context Time interval where cases are counted
 	 * @param sampleType Biopsy type of case for it to be counted
 	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
 	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
 	 * @return List of numbers of cases of a certain biopsy type, and TAT within a certain range with
 	 * different special requests/tests
 	 */
-	public List<RequestCount> findRequestBreakout(String sampleType, int tatStart, int tatEnd) {
-		return this.reportStats.findTatBreakoutByRequests(tatStart, tatEnd, sampleType);
+	@Cacheable("requestBreakout")
+	public List<RequestCount> findRequestBreakout(ReportContext context, String sampleType, int tatStart, int tatEnd) {
+		if (assetSnapshotRefresher.isReady()) {
+			return this.snapshotStats.findTatBreakoutByRequests(context, tatStart, tatEnd, sampleType);
+		}
+		if (assetRollupRefresher.isReady()) {
+			return this.rollupStats.findTatBreakoutByRequests(context, tatStart, tatEnd, sampleType);
+		}
+		return this.reportStats.findTatBreakoutByRequests(context, tatStart, tatEnd, sampleType);
+	}
+
+	/**
+	 * Calls countByRequests() from SnapshotStats, answered from its bitmap index, or from ReportStats for the number
+	 * of cases of a certain biopsy type, and TAT within a certain range, having a combination of special requests/tests
+	 * @param context Time interval where cases are counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param requests Request flags the case should all have, from AssetSummaryDao.REQUEST_FLAGS
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param origin The place where case is registered internally or externally, or null for all cases
+	 * @return Number of cases meeting all the conditions
+	 * @throws InvalidDashboardRequestException If a request is not one of AssetSummaryDao.REQUEST_FLAGS
+	 */
+	@Cacheable("requestCombinations")
+	public long countRequestCombination(ReportContext context, String sampleType, List<String> requests, int tatStart,
+			int tatEnd, String origin) {
+		for (String request : requests) {
+			if (!AssetSummaryDao.REQUEST_FLAGS.contains(request)) {
+				throw new InvalidDashboardRequestException("Unknown request " + request);
+			}
+		}
+		if (assetSnapshotRefresher.isReady()) {
+			return this.snapshotStats.countByRequests(context, sampleType, requests, tatStart, tatEnd, origin);
+		}
+		return this.reportStats.countByRequests(context, sampleType, requests, tatStart, tatEnd, origin);
 	}
 
 }
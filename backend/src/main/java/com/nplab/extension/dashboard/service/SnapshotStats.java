@@ -0,0 +1,380 @@
+/**
+ * Service class answering the dashboard and report queries by scanning the current AssetSnapshot instead of
+ * querying asset_summary. Every answer is the one the SQL query on asset_summary would give at the time the
+ * snapshot was loaded
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+import org.joda.time.DateTime;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.ColumnStats;
+import com.nplab.extension.db.DailyCount;
+import com.nplab.extension.db.PendingAsset;
+import com.nplab.extension.db.RequestCount;
+
+public class SnapshotStats {
+	private final Supplier<AssetSnapshot> snapshots;
+	private final List<String> sampleTypes;
+
+	/**
+	 * @param snapshots Supplier of the current AssetSnapshot
+	 * @param sampleTypes Biopsy types reported in the sample type breakout, in the order they are reported
+	 */
+	public SnapshotStats(Supplier<AssetSnapshot> snapshots, List<String> sampleTypes) {
+		this.snapshots = snapshots;
+		this.sampleTypes = List.copyOf(sampleTypes);
+	}
+
+	/**
+	 * @return List of the pending cases registered in the 90 days before today, as PendingAssetStats.findPendingAssets
+	 */
+	public List<PendingAsset> findPendingAssets() {
+		return findPendingAssets(0, 0);
+	}
+
+	/**
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @return List of pending cases, as PendingAssetStats.findPendingCasesByOrigin
+	 */
+	public List<PendingAsset> findPendingCasesByOrigin(String origin) {
+		return findPendingAssets(AssetSnapshot.ORIGIN_MASK, AssetSnapshot.originBits(origin));
+	}
+
+	/**
+	 * @param origin The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 * @return List of pending cases, as PendingAssetStats.findPendingCasesByOriginAndParity
+	 */
+	public List<PendingAsset> findPendingCasesByOriginAndParity(String origin, String parity) {
+		return findPendingAssets(AssetSnapshot.ORIGIN_AND_PARITY_MASK, AssetSnapshot.originAndParityBits(origin, parity));
+	}
+
+	// Pending cases registered in the 90 days before today whose NP number attributes under the mask are the given bits
+	private List<PendingAsset> findPendingAssets(int mask, int bits) {
+		AssetSnapshot snapshot = snapshots.get();
+		DateTime today = new DateTime().withTimeAtStartOfDay();
+		int end = snapshot.firstStartedOnOrAfter(today.getMillis());
+
+		List<PendingAsset> assets = new ArrayList<>();
+		for (int row = snapshot.firstStartedOnOrAfter(today.minusDays(90).getMillis()); row < end; row ++) {
+			if (snapshot.isPending(row) && (snapshot.npAttributes(row) & mask) == bits) {
+				assets.add(new PendingAsset(snapshot.npNumber(row), snapshot.biopsyType(row),
+						new DateTime(snapshot.startTime(row))));
+			}
+		}
+
+		return assets;
+	}
+
+	/**
+	 * @return Number of pending cases, as PendingAssetStats.findPendingAssetsCount
+	 */
+	public long countPendingAssets() {
+		AssetSnapshot snapshot = snapshots.get();
+		long count = 0;
+		for (int row = 0; row < snapshot.size(); row ++) {
+			if (snapshot.isPending(row)) {
+				count ++;
+			}
+		}
+
+		return count;
+	}
+
+	/**
+	 * @param startDays List of starting times of time intervals where pending cases are to be counted
+	 * @param endDays List of ending times of time intervals where pending cases are to be counted
+	 * @return List of number of pending cases, as PendingAssetStats.findPendingAssetBreakoutByTime
+	 */
+	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays) {
+		return countPendingByTime(startDays, endDays, true, 0, 0);
+	}
+
+	/**
+	 * @param startDays List of starting times of time intervals where pending cases are to be counted
+	 * @param endDays List of ending times of time intervals where pending cases are to be counted
+	 * @param type The place where case is registered i.e. internal or external
+	 * @return List of number of pending cases, as PendingAssetStats.findPendingAssetBreakoutByTime
+	 */
+	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays, String type) {
+		return countPendingByTime(startDays, endDays, false, AssetSnapshot.ORIGIN_MASK, AssetSnapshot.originBits(type));
+	}
+
+	/**
+	 * @param startDays List of starting times of time intervals where pending cases are to be counted
+	 * @param endDays List of ending times of time intervals where pending cases are to be counted
+	 * @param type The place where case is registered i.e. internal or external
+	 * @param parity Parity of NP number whether odd or even
+	 * @return List of number of pending cases, as PendingAssetStats.findPendingAssetBreakoutByTime
+	 */
+	public List<Long> findPendingAssetBreakoutByTime(List<Integer> startDays, List<Integer> endDays, String type,
+			String parity) {
+		return countPendingByTime(startDays, endDays, false, AssetSnapshot.ORIGIN_AND_PARITY_MASK,
+				AssetSnapshot.originAndParityBits(type, parity));
+	}
+
+	private List<Long> countPendingByTime(List<Integer> startDays, List<Integer> endDays, boolean lowerInclusive,
+			int mask, int bits) {
+		AssetSnapshot snapshot = snapshots.get();
+		DateTime today = new DateTime().withTimeAtStartOfDay();
+
+		List<Long> counts = new ArrayList<>();
+		for (int i = 0; i < startDays.size(); i ++) {
+			long startTime = today.minusDays(startDays.get(i)).getMillis();
+			long endTime = today.minusDays(endDays.get(i)).getMillis();
+			int first = lowerInclusive ? snapshot.firstStartedOnOrAfter(endTime) : snapshot.firstStartedAfter(endTime);
+			int last = snapshot.firstStartedAfter(startTime);
+			long count = 0;
+			for (int row = first; row < last; row ++) {
+				if (snapshot.isPending(row) && (snapshot.npAttributes(row) & mask) == bits) {
+					count ++;
+				}
+			}
+			counts.add(count);
+		}
+
+		return counts;
+	}
+
+	/**
+	 * @param time Time over where the cases are counted eg: month or year
+	 * @return Number of cases registered this year or month, as CasesCount.countCurrentMonth and countCurrentYear
+	 */
+	public long countCasesOverTime(String time) {
+		AssetSnapshot snapshot = snapshots.get();
+		return (time.equals("month")) ? CasesCount.countCurrentMonth((from, to) -> countStartedBetween(snapshot, from, to))
+				: CasesCount.countCurrentYear((from, to) -> countStartedBetween(snapshot, from, to));
+	}
+
+	// Cases registered at or after the first instant and at or before the second one
+	private static long countStartedBetween(AssetSnapshot snapshot, DateTime from, DateTime to) {
+		return Math.max(0, snapshot.firstStartedAfter(to.getMillis()) - snapshot.firstStartedOnOrAfter(from.getMillis()));
+	}
+
+	/**
+	 * @param days Number of days, counting of cases is needed
+	 * @return List of CasesCount objects, as CasesCount.findDailyCount
+	 */
+	public List<CasesCount> findDailyCount(int days) {
+		AssetSnapshot snapshot = snapshots.get();
+		return CasesCount.findDailyCount(days, (from, to) -> countDailyByOrigin(snapshot, from, to));
+	}
+
+	// Internal and external cases registered on each day from the start of a day to the start of another
+	private static List<DailyCount> countDailyByOrigin(AssetSnapshot snapshot, DateTime from, DateTime to) {
+		List<DailyCount> dailyCounts = new ArrayList<>();
+		int row = snapshot.firstStartedOnOrAfter(from.getMillis());
+		for (DateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+			int first = row;
+			int end = snapshot.firstStartedOnOrAfter(day.plusDays(1).getMillis());
+			long external = 0;
+			for (; row < end; row ++) {
+				if ((snapshot.npAttributes(row) & AssetSnapshot.EXTERNAL) != 0) {
+					external ++;
+				}
+			}
+			if (end > first) {
+				dailyCounts.add(new DailyCount(day.toString().substring(0, 10), end - first - external, external));
+			}
+		}
+
+		return dailyCounts;
+	}
+
+	/**
+	 * @param stat Column which is summarised, only tat is held in the snapshot
+	 * @param since Instant from which the registered cases are summarised
+	 * @return ColumnStats of the column over the cases having a value, as AssetSummaryDao.findColumnStats
+	 */
+	public ColumnStats findColumnStats(String stat, DateTime since) {
+		if (!stat.equals("tat")) {
+			throw new IllegalArgumentException("Cannot summarise " + stat);
+		}
+		AssetSnapshot snapshot = snapshots.get();
+		long count = 0;
+		double mean = 0;
+		double squares = 0;
+		int max = Integer.MIN_VALUE;
+		int min = Integer.MAX_VALUE;
+		for (int row = snapshot.firstStartedOnOrAfter(since.getMillis()); row < snapshot.size(); row ++) {
+			int tat = snapshot.tat(row);
+			if (tat == AssetSnapshot.NO_TAT) {
+				continue;
+			}
+			// Running mean and sum of squared deviations, giving the population standard deviation as STD() does
+			count ++;
+			double delta = tat - mean;
+			mean += delta / count;
+			squares += delta * (tat - mean);
+			max = Math.max(max, tat);
+			min = Math.min(min, tat);
+		}
+
+		if (count == 0) {
+			return new ColumnStats(0, 0, 0, 0, 0);
+		}
+		return new ColumnStats(mean, max, min, count, Math.sqrt(squares / count));
+	}
+
+	/**
+	 * @param context Time interval where cases are counted
+	 * @return List of number of cases grouped by biopsy types, as ReportStats.findBreakoutBySampleType
+	 */
+	public List<Long> findBreakoutBySampleType(ReportContext context) {
+		AssetSnapshot snapshot = snapshots.get();
+		List<boolean[]> matches = new ArrayList<>();
+		for (String sampleType : sampleTypes) {
+			matches.add(snapshot.biopsyTypesContaining(sampleType));
+		}
+
+		long[] counts = new long[sampleTypes.size()];
+		long start = context.getStartDate().getMillis();
+		int end = snapshot.firstStartedAfter(context.getEndDate().getMillis());
+		for (int row = snapshot.firstStarted(); row < end; row ++) {
+			int biopsyType = snapshot.biopsyTypeCode(row);
+			if (biopsyType == AssetSnapshot.NO_CODE || !processedSince(snapshot, row, start)) {
+				continue;
+			}
+			for (int i = 0; i < counts.length; i ++) {
+				if (matches.get(i)[biopsyType]) {
+					counts[i] ++;
+				}
+			}
+		}
+
+		List<Long> breakout = new ArrayList<>();
+		for (long count : counts) {
+			breakout.add(count);
+		}
+		return breakout;
+	}
+
+	/**
+	 * @param context Time interval where cases are counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param startValues List of start values of the range where TAT of a case should lie to be counted
+	 * @param endValues List of end value of the range where TAT of a case should lie to be counted
+	 * @return List of numbers of cases of a certain biopsy type whose TAT lies in specified intervals, as
+	 *     ReportStats.findSampleBreakoutByTat
+	 */
+	public List<Long> findSampleBreakoutByTat(ReportContext context, String sampleType, List<Integer> startValues,
+			List<Integer> endValues) {
+		if (startValues.isEmpty()) {
+			return new ArrayList<>();
+		}
+		return TatPercentiles.countInRanges(findTatHistogram(context, sampleType), startValues, endValues);
+	}
+
+	/**
+	 * @param context Time interval where cases are considered
+	 * @param sampleType Biopsy type of case for it to be considered
+	 * @return TatPercentiles of the cases of the biopsy type, as ReportStats.findTatPercentiles
+	 */
+	public TatPercentiles findTatPercentiles(ReportContext context, String sampleType) {
+		return new TatPercentiles(findTatHistogram(context, sampleType));
+	}
+
+	// Number of cases of the biopsy type processed during the time interval having each TAT value
+	private SortedMap<Integer, Long> findTatHistogram(ReportContext context, String sampleType) {
+		AssetSnapshot snapshot = snapshots.get();
+		boolean[] matches = snapshot.biopsyTypesContaining(sampleType);
+		long start = context.getStartDate().getMillis();
+		int end = snapshot.firstStartedAfter(context.getEndDate().getMillis());
+
+		SortedMap<Integer, Long> histogram = new TreeMap<>();
+		for (int row = snapshot.firstStarted(); row < end; row ++) {
+			int biopsyType = snapshot.biopsyTypeCode(row);
+			if (biopsyType != AssetSnapshot.NO_CODE && matches[biopsyType] && snapshot.tat(row) != AssetSnapshot.NO_TAT
+					&& processedSince(snapshot, row, start)) {
+				histogram.merge(snapshot.tat(row), 1L, Long::sum);
+			}
+		}
+
+		return histogram;
+	}
+
+	/**
+	 * @param context Time interval where cases are counted
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @return List of numbers of cases with different special requests/tests, ordered by request code, as
+	 *     ReportStats.findTatBreakoutByRequests
+	 */
+	public List<RequestCount> findTatBreakoutByRequests(ReportContext context, int tatStart, int tatEnd,
+			String sampleType) {
+		AssetSnapshot snapshot = snapshots.get();
+		boolean[] matches = snapshot.biopsyTypesContaining(sampleType);
+		long start = context.getStartDate().getMillis();
+		int end = snapshot.firstStartedAfter(context.getEndDate().getMillis());
+
+		// Counts are kept per request code dictionary code, the last slot counting the cases having no request code
+		long[] counts = new long[snapshot.requestCodeCount() + 1];
+		for (int row = snapshot.firstStarted(); row < end; row ++) {
+			int biopsyType = snapshot.biopsyTypeCode(row);
+			int tat = snapshot.tat(row);
+			if (biopsyType != AssetSnapshot.NO_CODE && matches[biopsyType] && tat != AssetSnapshot.NO_TAT
+					&& tatStart <= tat && tat <= tatEnd && processedSince(snapshot, row, start)) {
+				int requestCode = snapshot.requestCode(row);
+				counts[(requestCode == AssetSnapshot.NO_CODE) ? counts.length - 1 : requestCode] ++;
+			}
+		}
+
+		List<Integer> codes = new ArrayList<>();
+		for (int code = 0; code < counts.length - 1; code ++) {
+			if (counts[code] > 0) {
+				codes.add(code);
+			}
+		}
+		Collections.sort(codes, (a, b) -> snapshot.requestCodeOf(a).compareTo(snapshot.requestCodeOf(b)));
+
+		List<RequestCount> requestCounts = new ArrayList<>();
+		if (counts[counts.length - 1] > 0) {
+			requestCounts.add(new RequestCount(snapshot.requestMaskOf(AssetSnapshot.NO_CODE), counts[counts.length - 1]));
+		}
+		for (int code : codes) {
+			requestCounts.add(new RequestCount(snapshot.requestMaskOf(code), counts[code]));
+		}
+		return requestCounts;
+	}
+
+	/**
+	 * Counts the cases having a combination of special requests/tests from the bitmap index of the snapshot
+	 * @param context Time interval where cases are counted
+	 * @param sampleType Biopsy type of case for it to be counted
+	 * @param requests Request flags the case should all have, from AssetSummaryDao.REQUEST_FLAGS
+	 * @param tatStart Start value of the range where TAT of the case should lie to be counted
+	 * @param tatEnd End value of the range where TAT of a case should lie to be counted
+	 * @param origin The place where case is registered i.e. internal or external, or null for all cases
+	 * @return Number of cases meeting all the conditions, as ReportStats.countByRequests
+	 */
+	public long countByRequests(ReportContext context, String sampleType, List<String> requests, int tatStart,
+			int tatEnd, String origin) {
+		int requestMask = 0;
+		for (String request : requests) {
+			int flag = AssetSummaryDao.REQUEST_FLAGS.indexOf(request);
+			if (flag < 0) {
+				throw new IllegalArgumentException("Unknown request " + request);
+			}
+			requestMask |= 1 << flag;
+		}
+
+		return snapshots.get().bitmapIndex().count(context.getStartDate(), context.getEndDate(), sampleType,
+				requestMask, tatStart, tatEnd, origin);
+	}
+
+	// Whether a case registered before the end of a time interval was completed at or after its start
+	private static boolean processedSince(AssetSnapshot snapshot, int row, long start) {
+		return !snapshot.isPending(row) && snapshot.endTime(row) >= start;
+	}
+
+}
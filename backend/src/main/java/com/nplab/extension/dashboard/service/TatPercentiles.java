@@ -0,0 +1,93 @@
+/**
+ * Service class for percentiles of TAT, computed from the number of cases having each TAT value
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+public class TatPercentiles {
+	private long count;
+	private int p50;
+	private int p90;
+	private int p99;
+
+	/**
+	 * Stores the number of cases and the 50th, 90th and 99th percentile TAT
+	 * @param histogram Number of cases having each TAT value, ordered by TAT
+	 */
+	public TatPercentiles(SortedMap<Integer, Long> histogram) {
+		for (long cases : histogram.values()) {
+			this.count += cases;
+		}
+		this.p50 = findPercentile(histogram, 50);
+		this.p90 = findPercentile(histogram, 90);
+		this.p99 = findPercentile(histogram, 99);
+	}
+
+	/**
+	 * Finds a percentile using the nearest rank method
+	 * @param histogram Number of cases having each TAT value, ordered by TAT
+	 * @param percentile Percentile to be found, between 0 and 100
+	 * @return Smallest TAT such that at least the given percent of cases have a TAT less than or equal to it
+	 */
+	private int findPercentile(SortedMap<Integer, Long> histogram, int percentile) {
+		long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+		long seen = 0;
+		for (Map.Entry<Integer, Long> entry : histogram.entrySet()) {
+			seen += entry.getValue();
+			if (seen >= rank) {
+				return entry.getKey();
+			}
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Counts the cases whose TAT lies in each of the given ranges
+	 * @param histogram Number of cases having each TAT value, ordered by TAT
+	 * @param startValues List of start values of the ranges
+	 * @param endValues List of end values of the ranges, both ends being included
+	 * @return List of numbers of cases in each range
+	 */
+	static List<Long> countInRanges(SortedMap<Integer, Long> histogram, List<Integer> startValues,
+			List<Integer> endValues) {
+		List<Long> counts = new ArrayList<>();
+		for (int i = 0; i < startValues.size(); i ++) {
+			long count = 0;
+			if (startValues.get(i) <= endValues.get(i)) {
+				for (long cases : histogram.subMap(startValues.get(i), endValues.get(i) + 1).values()) {
+					count += cases;
+				}
+			}
+			counts.add(count);
+		}
+
+		return counts;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public int getP50() {
+		return p50;
+	}
+
+	public int getP90() {
+		return p90;
+	}
+
+	public int getP99() {
+		return p99;
+	}
+
+	@Override
+	public String toString() {
+		return "TatPercentiles [count=" + count + ", p50=" + p50 + ", p90=" + p90 + ", p99=" + p99 + "]";
+	}
+}
@@ -0,0 +1,79 @@
+/**
+ * DB class for mapping to asset_completed_rollup table in TrackerDb. This is a rollup of asset_summary holding the
+ * number of cases completed on a day by biopsy type, request code and TAT, so that reports over long time
+ * intervals read a few rows per day instead of every case. TAT is kept exact, as the reports count it in ranges
+ * chosen by the user and take percentiles of it.
+ * Contains getters and overridden toString()
+ */
+package com.nplab.extension.db;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.LocalDate;
+
+@Entity
+@Table(name = "asset_completed_rollup")
+public class AssetCompletedRollup {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private long id;
+
+	@Column(name = "end_day")
+	@Type(type="org.jadira.usertype.dateandtime.joda.PersistentLocalDate")
+	private LocalDate endDay;
+
+	@Column(name = "biopsy_type")
+	private String biopsyType;
+
+	@Column(name = "request_code")
+	private String requestCode;
+
+	@Column(name = "tat")
+	private Integer tat;
+
+	@Column(name = "case_count")
+	private long caseCount;
+
+	public AssetCompletedRollup() {
+
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public LocalDate getEndDay() {
+		return endDay;
+	}
+
+	public String getBiopsyType() {
+		return biopsyType;
+	}
+
+	public String getRequestCode() {
+		return requestCode;
+	}
+
+	public Integer getTat() {
+		return tat;
+	}
+
+	public long getCaseCount() {
+		return caseCount;
+	}
+
+	@Override
+	public String toString() {
+		return "AssetCompletedRollup [endDay=" + endDay + ", biopsyType=" + biopsyType + ", requestCode="
+				+ requestCode + ", tat=" + tat + ", caseCount=" + caseCount + "]";
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * DB class for mapping to asset_daily_rollup table in TrackerDb. This is a rollup of asset_summary holding the
+ * number of cases registered on a day by origin and biopsy type, so that counts over long time intervals read
+ * a few rows per day instead of every case. Completions are rolled up in AssetCompletedRollup.
+ * Contains getters and overridden toString()
+ */
+package com.nplab.extension.db;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.GeneratedValue;
+import javax.persistence.GenerationType;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import org.hibernate.annotations.Type;
+import org.joda.time.LocalDate;
+
+@Entity
+@Table(name = "asset_daily_rollup")
+public class AssetDailyRollup {
+
+	@Id
+	@GeneratedValue(strategy = GenerationType.IDENTITY)
+	@Column(name = "id")
+	private long id;
+
+	@Column(name = "start_day")
+	@Type(type="org.jadira.usertype.dateandtime.joda.PersistentLocalDate")
+	private LocalDate startDay;
+
+	@Column(name = "origin")
+	private String origin;
+
+	@Column(name = "biopsy_type")
+	private String biopsyType;
+
+	@Column(name = "case_count")
+	private long caseCount;
+
+	public AssetDailyRollup() {
+
+	}
+
+	public long getId() {
+		return id;
+	}
+
+	public LocalDate getStartDay() {
+		return startDay;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public String getBiopsyType() {
+		return biopsyType;
+	}
+
+	public long getCaseCount() {
+		return caseCount;
+	}
+
+	@Override
+	public String toString() {
+		return "AssetDailyRollup [startDay=" + startDay + ", origin=" + origin + ", biopsyType=" + biopsyType
+				+ ", caseCount=" + caseCount + "]";
+	}
+
+}
@@ -0,0 +1,61 @@
+/**
+ * DB class for mapping to asset_np_attribute table in TrackerDb. This is a side table holding the origin
+ * (internal or external) and the parity (even or odd) of every NP number in asset_summary, so that they
+ * can be filtered on through an index instead of LIKE patterns on the NP number.
+ * Contains getters, setters and overridden toString()
+ */
+package com.nplab.extension.db;
+
+import javax.persistence.Column;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+@Entity
+@Table(name = "asset_np_attribute")
+public class AssetNpAttribute {
+
+	@Id
+	@Column(name = "np_number")
+	private String npNumber;
+
+	@Column(name = "origin")
+	private String origin;
+
+	@Column(name = "parity")
+	private String parity;
+
+	public AssetNpAttribute() {
+
+	}
+
+	public String getNpNumber() {
+		return npNumber;
+	}
+
+	public String getOrigin() {
+		return origin;
+	}
+
+	public String getParity() {
+		return parity;
+	}
+
+	public void setNpNumber(String npNumber) {
+		this.npNumber = npNumber;
+	}
+
+	public void setOrigin(String origin) {
+		this.origin = origin;
+	}
+
+	public void setParity(String parity) {
+		this.parity = parity;
+	}
+
+	@Override
+	public String toString() {
+		return "AssetNpAttribute [npNumber=" + npNumber + ", origin=" + origin + ", parity=" + parity + "]";
+	}
+
+}
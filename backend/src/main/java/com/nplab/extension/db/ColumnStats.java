@@ -0,0 +1,50 @@
+/**
+ * DB class for collecting the aggregates (mean, maximum, minimum, count and standard deviation) of a column
+ * of the asset_summary table from the query results
+ * Contains getters and overridden toString()
+ */
+
+package com.nplab.extension.db;
+
+public class ColumnStats {
+	private double mean;
+	private int max;
+	private int min;
+	private long count;
+	private double stddev;
+
+	public ColumnStats(double mean, int max, int min, long count, double stddev) {
+		this.mean = mean;
+		this.max = max;
+		this.min = min;
+		this.count = count;
+		this.stddev = stddev;
+	}
+
+	public double getMean() {
+		return mean;
+	}
+
+	public int getMax() {
+		return max;
+	}
+
+	public int getMin() {
+		return min;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	public double getStddev() {
+		return stddev;
+	}
+
+	@Override
+	public String toString() {
+		return "ColumnStats [mean=" + mean + ", max=" + max + ", min=" + min + ", count=" + count + ", stddev="
+				+ stddev + "]";
+	}
+
+}
@@ -0,0 +1,52 @@
+/**
+ * DB class for collecting the number of internal and external cases registered on a day from the query results
+ * Contains getters, setters and overridden toString()
+ */
+
+package com.nplab.extension.db;
+
+public class DailyCount {
+	private String day;
+	private long internalCount;
+	private long externalCount;
+
+	public DailyCount(String day, long internalCount, long externalCount) {
+		this.day = day;
+		this.internalCount = internalCount;
+		this.externalCount = externalCount;
+	}
+
+	public DailyCount() {
+
+	}
+
+	public String getDay() {
+		return day;
+	}
+
+	public long getInternalCount() {
+		return internalCount;
+	}
+
+	public long getExternalCount() {
+		return externalCount;
+	}
+
+	public void setDay(String day) {
+		this.day = day;
+	}
+
+	public void setInternalCount(long internalCount) {
+		this.internalCount = internalCount;
+	}
+
+	public void setExternalCount(long externalCount) {
+		this.externalCount = externalCount;
+	}
+
+	@Override
+	public String toString() {
+		return "DailyCount [day=" + day + ", internalCount=" + internalCount + ", externalCount=" + externalCount + "]";
+	}
+
+}
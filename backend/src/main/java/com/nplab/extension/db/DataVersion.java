@@ -0,0 +1,56 @@
+/**
+ * DB class for collecting a cheap marker of the contents of the asset_summary table (latest start and end time
+ * and number of rows) from the query results. It changes whenever a case is registered, completed or removed
+ * Contains getters, overridden equals(), hashCode() and toString()
+ */
+
+package com.nplab.extension.db;
+
+import java.util.Objects;
+
+public class DataVersion {
+	private long maxStartTime;
+	private long maxEndTime;
+	private long count;
+
+	public DataVersion(long maxStartTime, long maxEndTime, long count) {
+		this.maxStartTime = maxStartTime;
+		this.maxEndTime = maxEndTime;
+		this.count = count;
+	}
+
+	public long getMaxStartTime() {
+		return maxStartTime;
+	}
+
+	public long getMaxEndTime() {
+		return maxEndTime;
+	}
+
+	public long getCount() {
+		return count;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (this == o) {
+			return true;
+		}
+		if (!(o instanceof DataVersion)) {
+			return false;
+		}
+		DataVersion other = (DataVersion) o;
+		return maxStartTime == other.maxStartTime && maxEndTime == other.maxEndTime && count == other.count;
+	}
+
+	@Override
+	public int hashCode() {
+		return Objects.hash(maxStartTime, maxEndTime, count);
+	}
+
+	@Override
+	public String toString() {
+		return "DataVersion [maxStartTime=" + maxStartTime + ", maxEndTime=" + maxEndTime + ", count=" + count + "]";
+	}
+
+}
@@ -8,21 +8,29 @@ package com.nplab.extension.db;
 
 import com.nplab.extension.utility.StringToDate;
 import org.joda.time.DateTime;
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class PendingAsset {
 	private String npNumber;
 	private String biopsyType;
 	private String startTime;
+	// Unformatted start time, from which the key of the next page is made when paginating
+	@JsonIgnore
+	private DateTime startDateTime;
 
 	@Autowired
 	public PendingAsset(String npNumber, String biopsyType, DateTime startTime) {
 		super();
 		this.npNumber = npNumber;
 		this.biopsyType = biopsyType;
+		this.startDateTime = startTime;
 		DateTime currentInstant = new DateTime();
 		// Formatting the start time of the pending asset according to current time instant
-		if (startTime.equals(currentInstant)) {
+		if (startTime == null) {
+			// Cases registered without a start time have none to format
+			this.startTime = null;
+		} else if (startTime.equals(currentInstant)) {
 			this.startTime = "Now";
 		} else {
 			String date = StringToDate.preProcessDate(startTime.toString().substring(0, 10));
@@ -56,6 +64,11 @@ public class PendingAsset {
 		return startTime;
 	}
 
+	@JsonIgnore
+	public DateTime getStartDateTime() {
+		return startDateTime;
+	}
+
 	public void setNpNumber(String npNumber) {
 		this.npNumber = npNumber;
 	}
@@ -65,6 +78,7 @@ public class PendingAsset {
 	}
 
 	public void setStartTime(DateTime startTime) {
+		this.startDateTime = startTime;
 		DateTime currentInstant = new DateTime();
 		// Formatting the start time of the pending asset according to current time instant
 		if (startTime.equals(currentInstant)) {
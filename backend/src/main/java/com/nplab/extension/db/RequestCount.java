@@ -6,31 +6,66 @@
 
 package com.nplab.extension.db;
 
-import java.util.List;
-
 import org.springframework.beans.factory.annotation.Autowired;
 
 public class RequestCount {
+	// Request types in the order of the characters of request_code
+	private static final String[] REQUEST_TYPES = { "Special stain", "IHC", "Process all", "Deeper", "Decal",
+			"Kept for fixation", "Electron Microscope", "Semi Thin", "EHC" };
+	// Label of every combination of request types, indexed by the mask having bit i set for request type i
+	private static final String[] LABELS = new String[1 << REQUEST_TYPES.length];
+	static {
+		for (int mask = 0; mask < LABELS.length; mask ++) {
+			// Combine all request types in 1 string for easy access at the frontend.
+			// Eg: request types like Special stain + IHC, IHC, etc
+			StringBuilder requests = new StringBuilder();
+			for (int i = 0; i < REQUEST_TYPES.length; i ++) {
+				if ((mask & (1 << i)) != 0) {
+					requests.append(requests.length() == 0 ? "" : " + ").append(REQUEST_TYPES[i]);
+				}
+			}
+			LABELS[mask] = (requests.length() == 0) ? "No instruction" : requests.toString();
+		}
+	}
+
 	private String requestType;
 	private long count;
 	
 	@Autowired
 	public RequestCount(String requestType, long count) {
-		List<String> requestTypes = List.of("Special stain", "IHC", "Process all", "Deeper", "Decal",
-						"Kept for fixation", "Electron Microscope", "Semi Thin", "EHC");
-		String requests = "";
-		// Combine all request types in 1 string for easy access at the frontend.
-		// Eg: request types like Special stain + IHC, IHC, etc
-		for (int i = 0; i < requestType.length(); i ++) {
-			if (requestType.charAt(i) == '1') {
-				requests += requestTypes.get(i) + " + ";
-			}
+		this(toMask(requestType), count);
+	}
+
+	/**
+	 * @param mask Request types of the cases, bit i being set for the request type of character i of request_code
+	 * @param count Number of cases
+	 * @throws IllegalArgumentException If the mask has bits beyond the request types
+	 */
+	public RequestCount(int mask, long count) {
+		if (mask < 0 || mask >= LABELS.length) {
+			throw new IllegalArgumentException("Invalid request mask " + mask);
 		}
-		
-		this.requestType = requests == "" ? "No instruction" : requests.substring(0, requests.length() - 3);
+		this.requestType = LABELS[mask];
 		this.count = count;
 	}
 
+	/**
+	 * Parses a request_code into the mask of its request types
+	 * @param requestCode String of one '1' or '0' per request type, or null for a case without any
+	 * @return Mask having bit i set when character i of the request code is '1'
+	 */
+	public static int toMask(String requestCode) {
+		int mask = 0;
+		if (requestCode != null) {
+			for (int i = 0; i < Math.min(requestCode.length(), REQUEST_TYPES.length); i ++) {
+				if (requestCode.charAt(i) == '1') {
+					mask |= 1 << i;
+				}
+			}
+		}
+		return mask;
+	}
+
 	public RequestCount() {
 
 	}
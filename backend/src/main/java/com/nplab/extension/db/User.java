@@ -9,10 +9,12 @@ package com.nplab.extension.db;
 import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.Id;
+import javax.persistence.NamedQuery;
 import javax.persistence.Table;
 
 @Table(name = "user")
 @Entity
+@NamedQuery(name = "User.findByUsername", query = "select u from User u where u.username = :username")
 public class User {
 	
 	@Id
@@ -0,0 +1,179 @@
+/**
+ * Flyway migration adding the indexes the dashboard queries of AssetSummaryDao need to asset_summary. Where
+ * asset_summary is a view, as it is in TrackerDb, each index is added to the table its leading column comes from,
+ * following the view definition (and the definitions of the views it reads from). The columns of an index coming
+ * from another table, or computed by the view such as TAT, are left out of it.
+ * Those tables belong to the tracker, so the migration only touches them when the Flyway placeholder
+ * asset-summary-indexes is true. An index it cannot trace or add is logged and skipped, never failing the startup.
+ * Otherwise the indexes are left to the DBA, with db/dba/asset_summary_indexes.sql
+ */
+
+package com.nplab.extension.db.migration;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+public class V3__AssetSummaryIndexes extends BaseJavaMigration {
+	private final Logger log = LoggerFactory.getLogger(V3__AssetSummaryIndexes.class);
+
+	// Index names with the asset_summary columns they are on, each matched to the access paths of the dashboard queries
+	private static final Map<String, List<String>> INDEXES = new LinkedHashMap<>();
+	static {
+		// Pending cases (end_time IS NULL) by start time, and cases completed since an instant. With biopsy_type and
+		// the primary key carried by every InnoDB index, the pending listing is read from the index alone
+		INDEXES.put("idx_asset_summary_end_start", List.of("end_time", "start_time", "biopsy_type"));
+		// Cases registered in a time interval, counted daily or by biopsy type
+		INDEXES.put("idx_asset_summary_start_biopsy", List.of("start_time", "biopsy_type"));
+		// TAT histograms and request breakouts of a biopsy type over a time interval
+		INDEXES.put("idx_asset_summary_biopsy_tat", List.of("biopsy_type", "TAT", "end_time", "start_time", "request_code"));
+	}
+
+	// Tables read by a view definition, as `schema`.`table` optionally followed by their `alias`
+	private static final Pattern VIEW_TABLE = Pattern.compile("(?:from|join)\\s+\\(*`(\\w+)`\\.`(\\w+)`(?:\\s+`(\\w+)`)?",
+			Pattern.CASE_INSENSITIVE);
+
+	@Override
+	public void migrate(Context context) throws SQLException {
+		if (!"true".equals(context.getConfiguration().getPlaceholders().get("asset-summary-indexes"))) {
+			log.info("Indexes of asset_summary are not added, they are in db/dba/asset_summary_indexes.sql");
+			return;
+		}
+		Connection connection = context.getConnection();
+		String schema = currentSchema(connection);
+
+		for (Map.Entry<String, List<String>> index : INDEXES.entrySet()) {
+			try {
+				addIndex(connection, schema, index.getKey(), index.getValue());
+			} catch (SQLException e) {
+				// Such as the ALTER privilege missing on the tables of the tracker
+				log.warn("Index {} could not be added: {}", index.getKey(), e.getMessage());
+			}
+		}
+	}
+
+	private void addIndex(Connection connection, String schema, String name, List<String> columns) throws SQLException {
+		TableColumn leading = resolve(connection, schema, "asset_summary", columns.get(0));
+		if (leading == null) {
+			log.warn("Column {} of asset_summary is not read from a table, index {} is not added", columns.get(0), name);
+			return;
+		}
+
+		List<String> tableColumns = new ArrayList<>();
+		for (String column : columns) {
+			TableColumn resolved = resolve(connection, schema, "asset_summary", column);
+			if (resolved != null && resolved.isOn(leading)) {
+				tableColumns.add("`" + resolved.column + "`");
+			}
+		}
+
+		// MySQL has no CREATE INDEX IF NOT EXISTS, indexes already there are skipped instead
+		if (hasIndex(connection, leading.schema, leading.table, name)) {
+			return;
+		}
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("CREATE INDEX `" + name + "` ON `" + leading.schema + "`.`" + leading.table + "` (" +
+					String.join(", ", tableColumns) + ")");
+		}
+		log.info("Index {} added to {}.{} on {}", name, leading.schema, leading.table, tableColumns);
+	}
+
+	/**
+	 * Traces a column of a table or view to the table it is stored in
+	 * @return TableColumn the column is read from, null if the view computes it or a table or view is missing
+	 */
+	private static TableColumn resolve(Connection connection, String schema, String table, String column)
+			throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT t.TABLE_TYPE, v.VIEW_DEFINITION FROM information_schema.TABLES t " +
+				"LEFT JOIN information_schema.VIEWS v ON v.TABLE_SCHEMA = t.TABLE_SCHEMA AND v.TABLE_NAME = t.TABLE_NAME " +
+				"WHERE t.TABLE_SCHEMA = ? AND t.TABLE_NAME = ?")) {
+			statement.setString(1, schema);
+			statement.setString(2, table);
+			try (ResultSet result = statement.executeQuery()) {
+				if (!result.next()) {
+					return null;
+				}
+				if ("BASE TABLE".equals(result.getString(1))) {
+					return new TableColumn(schema, table, column);
+				}
+				String definition = result.getString(2);
+				// Only shown to the owner of the view or to users allowed to see its definition
+				if (definition == null || definition.isEmpty()) {
+					return null;
+				}
+				return resolveInView(connection, definition, column);
+			}
+		}
+	}
+
+	// Views are stored with every selected column written as [`schema`.]`table or alias`.`column` AS `name`
+	private static TableColumn resolveInView(Connection connection, String definition, String column) throws SQLException {
+		Matcher selected = Pattern.compile("(?:select\\s+|,)(?:`(\\w+)`\\.)?`(\\w+)`\\.`(\\w+)` AS `" +
+				Pattern.quote(column) + "`(?:,|\\s+from\\s)", Pattern.CASE_INSENSITIVE).matcher(definition);
+		if (!selected.find()) {
+			return null;
+		}
+
+		Matcher tables = VIEW_TABLE.matcher(definition);
+		while (tables.find()) {
+			String name = (tables.group(3) == null) ? tables.group(2) : tables.group(3);
+			boolean sameSchema = selected.group(1) == null || selected.group(1).equalsIgnoreCase(tables.group(1));
+			if (sameSchema && name.equalsIgnoreCase(selected.group(2))) {
+				return resolve(connection, tables.group(1), tables.group(2), selected.group(3));
+			}
+		}
+		return null;
+	}
+
+	private static String currentSchema(Connection connection) throws SQLException {
+		try (Statement statement = connection.createStatement();
+				ResultSet result = statement.executeQuery("SELECT DATABASE()")) {
+			result.next();
+			return result.getString(1);
+		}
+	}
+
+	private static boolean hasIndex(Connection connection, String schema, String table, String name) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT 1 FROM information_schema.STATISTICS " +
+				"WHERE TABLE_SCHEMA = ? AND TABLE_NAME = ? AND INDEX_NAME = ?")) {
+			statement.setString(1, schema);
+			statement.setString(2, table);
+			statement.setString(3, name);
+			try (ResultSet result = statement.executeQuery()) {
+				return result.next();
+			}
+		}
+	}
+
+	private static class TableColumn {
+		private final String schema;
+		private final String table;
+		private final String column;
+
+		TableColumn(String schema, String table, String column) {
+			this.schema = schema;
+			this.table = table;
+			this.column = column;
+		}
+
+		boolean isOn(TableColumn other) {
+			return schema.equals(other.schema) && table.equals(other.table);
+		}
+	}
+
+}
@@ -0,0 +1,46 @@
+/**
+ * Utility class for coalescing identical concurrent calls. The first caller for a key runs the computation and
+ * every caller arriving while it is in flight waits for and shares its result, instead of running it again
+ */
+package com.nplab.extension.utility;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+public class SingleFlight {
+	private final ConcurrentMap<Object, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Runs the computation for the key, or joins the one already running for an equal key
+	 * @param key Key identifying the computation, such as the query name and its arguments
+	 * @param computation Computation to run when none is in flight for the key
+	 * @return Result of the computation
+	 */
+	@SuppressWarnings("unchecked")
+	public <V> V execute(Object key, Supplier<V> computation) {
+		CompletableFuture<Object> call = new CompletableFuture<>();
+		CompletableFuture<Object> running = inFlight.putIfAbsent(key, call);
+		if (running != null) {
+			try {
+				return (V) running.join();
+			} catch (CompletionException e) {
+				throw (e.getCause() instanceof RuntimeException) ? (RuntimeException) e.getCause() : e;
+			}
+		}
+
+		// The result is only shared while in flight, callers arriving after completion compute it afresh
+		try {
+			V result = computation.get();
+			call.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			call.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, call);
+		}
+	}
+}
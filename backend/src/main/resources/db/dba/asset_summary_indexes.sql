@@ -0,0 +1,25 @@
+-- Indexes the dashboard queries of AssetSummaryDao need, for the DBA to add to the TrackerDb tables asset_summary
+-- is a view on. The dashboard only adds them itself (V3__AssetSummaryIndexes) when the Flyway placeholder
+-- asset-summary-indexes is true.
+--
+-- SHOW CREATE VIEW asset_summary gives the table each column is read from. Set @asset_table to the table of
+-- start_time, end_time and biopsy_type, and rename the columns below where the view renames them. TAT, computed by
+-- the view, and request_code, when read from another table, are left out.
+SET @asset_table = 'asset';
+
+-- Pending cases (end_time IS NULL) by start time, and cases completed since an instant
+SET @ddl = CONCAT('CREATE INDEX idx_asset_summary_end_start ON ', @asset_table, ' (end_time, start_time, biopsy_type)');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+
+-- Cases registered in a time interval, counted daily or by biopsy type
+SET @ddl = CONCAT('CREATE INDEX idx_asset_summary_start_biopsy ON ', @asset_table, ' (start_time, biopsy_type)');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+
+-- TAT histograms and request breakouts of a biopsy type over a time interval
+SET @ddl = CONCAT('CREATE INDEX idx_asset_summary_biopsy_tat ON ', @asset_table, ' (biopsy_type, end_time, start_time)');
+PREPARE ddl FROM @ddl;
+EXECUTE ddl;
+
+DEALLOCATE PREPARE ddl;
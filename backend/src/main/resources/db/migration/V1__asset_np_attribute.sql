@@ -0,0 +1,9 @@
+-- Origin and parity of every NP number in asset_summary, kept by AssetNpAttributeRefresher.
+-- asset_summary is a view, so these derived attributes live in a side table where they can be indexed.
+CREATE TABLE IF NOT EXISTS asset_np_attribute (
+	np_number VARCHAR(64) NOT NULL,
+	origin VARCHAR(8) NOT NULL,
+	parity VARCHAR(4) NOT NULL,
+	PRIMARY KEY (np_number),
+	KEY idx_asset_np_attribute_origin_parity (origin, parity, np_number)
+);
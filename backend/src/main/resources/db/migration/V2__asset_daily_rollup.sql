@@ -0,0 +1,23 @@
+-- Daily rollup of asset_summary, kept by AssetRollupRefresher when dashboard.rollup.enabled is set.
+-- One row per combination of registration day, completion day, origin, biopsy type, request code and TAT,
+-- with the number of cases having it. Days of registration touched since the high-water mark in
+-- asset_rollup_state are recomputed on every refresh.
+CREATE TABLE IF NOT EXISTS asset_daily_rollup (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	start_day DATE NOT NULL,
+	end_day DATE NULL,
+	origin VARCHAR(8) NOT NULL,
+	biopsy_type VARCHAR(255) NULL,
+	request_code VARCHAR(16) NULL,
+	tat INT NULL,
+	case_count BIGINT NOT NULL,
+	PRIMARY KEY (id),
+	KEY idx_asset_daily_rollup_start_day (start_day),
+	KEY idx_asset_daily_rollup_end_day (end_day)
+);
+
+CREATE TABLE IF NOT EXISTS asset_rollup_state (
+	name VARCHAR(32) NOT NULL,
+	high_water_mark DATETIME NOT NULL,
+	PRIMARY KEY (name)
+);
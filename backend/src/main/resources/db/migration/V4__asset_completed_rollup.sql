@@ -0,0 +1,28 @@
+-- asset_daily_rollup grouped the cases by both their days, origin, biopsy type, request code and TAT, which is
+-- close to one row per case. Registrations are now rolled up per day, origin and biopsy type, and completions per
+-- day, biopsy type, request code and TAT in asset_completed_rollup. Forgetting the high-water mark makes the next
+-- refresh compute both from every case.
+DROP TABLE IF EXISTS asset_daily_rollup;
+
+CREATE TABLE asset_daily_rollup (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	start_day DATE NOT NULL,
+	origin VARCHAR(8) NOT NULL,
+	biopsy_type VARCHAR(255) NULL,
+	case_count BIGINT NOT NULL,
+	PRIMARY KEY (id),
+	KEY idx_asset_daily_rollup_start_day (start_day)
+);
+
+CREATE TABLE IF NOT EXISTS asset_completed_rollup (
+	id BIGINT NOT NULL AUTO_INCREMENT,
+	end_day DATE NOT NULL,
+	biopsy_type VARCHAR(255) NULL,
+	request_code VARCHAR(16) NULL,
+	tat INT NULL,
+	case_count BIGINT NOT NULL,
+	PRIMARY KEY (id),
+	KEY idx_asset_completed_rollup_end_day (end_day)
+);
+
+DELETE FROM asset_rollup_state;
@@ -0,0 +1,73 @@
+package com.nplab.extension.auth;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * Tests of the per-username and per-IP token buckets of LoginRateLimiter, on a clock moved by the tests
+ */
+class LoginRateLimiterTest {
+
+    private final AtomicLong now = new AtomicLong(1_000_000);
+    // 3 attempts per minute and username, 5 per minute and IP
+    private final LoginRateLimiter limiter = new LoginRateLimiter(3, 5, 100, now::get);
+
+    @Test
+    void usernameIsLimitedAcrossAddresses() {
+        assertTrue(limiter.tryAcquire("lab", "10.0.0.1"));
+        assertTrue(limiter.tryAcquire("lab", "10.0.0.2"));
+        assertTrue(limiter.tryAcquire("lab", "10.0.0.3"));
+        assertFalse(limiter.tryAcquire("lab", "10.0.0.4"));
+
+        assertTrue(limiter.tryAcquire("other", "10.0.0.4"));
+    }
+
+    @Test
+    void addressIsLimitedAcrossUsernames() {
+        for (int i = 0; i < 5; i ++) {
+            assertTrue(limiter.tryAcquire("user" + i, "10.0.0.1"));
+        }
+        assertFalse(limiter.tryAcquire("user5", "10.0.0.1"));
+
+        assertTrue(limiter.tryAcquire("user5", "10.0.0.2"));
+    }
+
+    @Test
+    void bucketsRefillOverTime() {
+        for (int i = 0; i < 3; i ++) {
+            assertTrue(limiter.tryAcquire("lab", "10.0.0.1"));
+        }
+        assertFalse(limiter.tryAcquire("lab", "10.0.0.1"));
+
+        // One attempt comes back every 20 seconds
+        now.addAndGet(19_999);
+        assertFalse(limiter.tryAcquire("lab", "10.0.0.1"));
+        now.addAndGet(1);
+        assertTrue(limiter.tryAcquire("lab", "10.0.0.1"));
+        assertFalse(limiter.tryAcquire("lab", "10.0.0.1"));
+    }
+
+    @Test
+    void bucketsDoNotFillBeyondTheirCapacity() {
+        now.addAndGet(3_600_000);
+
+        for (int i = 0; i < 3; i ++) {
+            assertTrue(limiter.tryAcquire("lab", "10.0.0.1"));
+        }
+        assertFalse(limiter.tryAcquire("lab", "10.0.0.1"));
+    }
+
+    @Test
+    void missingUsernameHasItsOwnBucket() {
+        for (int i = 0; i < 3; i ++) {
+            assertTrue(limiter.tryAcquire(null, "10.0.0.1"));
+        }
+        assertFalse(limiter.tryAcquire(null, "10.0.0.2"));
+        assertTrue(limiter.tryAcquire("lab", "10.0.0.2"));
+    }
+
+}
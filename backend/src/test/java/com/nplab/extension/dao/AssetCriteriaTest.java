@@ -0,0 +1,152 @@
+/**
+ * Tests of the HQL conditions rendered by AssetCriteria and of the values QueryParameters binds to them
+ */
+
+package com.nplab.extension.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verifyNoMoreInteractions;
+
+import java.util.List;
+
+import javax.persistence.Query;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+class AssetCriteriaTest {
+	private final DateTime start = new DateTime(2024, 1, 1, 0, 0);
+	private final DateTime end = new DateTime(2024, 1, 31, 0, 0);
+
+	@Test
+	void noCriteriaMatchesEverything() {
+		QueryParameters parameters = new QueryParameters();
+
+		assertEquals("1 = 1", AssetCriteria.all().toHql(parameters));
+
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		verifyNoMoreInteractions(query);
+	}
+
+	@Test
+	void criteriaAreJoinedWithAndAndBoundInOrder() {
+		QueryParameters parameters = new QueryParameters();
+
+		String hql = AssetCriteria.all().pending().startedOnOrAfter(start).startedBefore(end).biopsyType("Tumor")
+				.toHql(parameters);
+
+		assertEquals("a.endTime IS NULL AND :p0 <= a.startTime AND a.startTime < :p1 AND a.biopsyType LIKE :p2", hql);
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", start);
+		order.verify(query).setParameter("p1", end);
+		order.verify(query).setParameter("p2", "%Tumor%");
+		verifyNoMoreInteractions(query);
+	}
+
+	@Test
+	void valuesNeverChangeTheQueryText() {
+		String tumor = AssetCriteria.all().processedDuring(start, end).biopsyType("Tumor").tatBetween(0, 5)
+				.toHql(new QueryParameters());
+		String quoted = AssetCriteria.all().processedDuring(end, start).biopsyType("x' OR '1' = '1").tatBetween(3, 9)
+				.toHql(new QueryParameters());
+
+		assertEquals(tumor, quoted);
+		assertFalse(quoted.contains("'1'"));
+	}
+
+	@Test
+	void criteriaSharingParametersAreNumberedOnFromEachOther() {
+		QueryParameters parameters = new QueryParameters();
+
+		String first = AssetCriteria.all().tatBetween(0, 2).toHql(parameters);
+		String second = AssetCriteria.all().tatBetween(3, 5).toHql(parameters);
+
+		assertEquals(":p0 <= a.tat AND a.tat <= :p1", first);
+		assertEquals(":p2 <= a.tat AND a.tat <= :p3", second);
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", 0);
+		order.verify(query).setParameter("p1", 2);
+		order.verify(query).setParameter("p2", 3);
+		order.verify(query).setParameter("p3", 5);
+	}
+
+	@Test
+	void startedAfterKeyComparesStartTimeThenNpNumber() {
+		QueryParameters parameters = new QueryParameters();
+
+		assertEquals("(:p0 < a.startTime OR (a.startTime = :p1 AND :p2 < a.npNumber))",
+				AssetCriteria.all().startedAfterKey(start, "123/24").toHql(parameters));
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", start);
+		order.verify(query).setParameter("p1", start);
+		order.verify(query).setParameter("p2", "123/24");
+	}
+
+	@Test
+	void originFallsBackToTheNpNumberForCasesMissingFromTheSideTable() {
+		QueryParameters parameters = new QueryParameters();
+
+		String hql = AssetCriteria.all().origin("internal").toHql(parameters);
+
+		assertTrue(hql.startsWith("(a.npNumber IN (SELECT n.npNumber FROM AssetNpAttribute n WHERE n.origin = :p0) OR ("));
+		assertTrue(hql.contains("NOT EXISTS (SELECT m.npNumber FROM AssetNpAttribute m WHERE m.npNumber = a.npNumber)"));
+		assertTrue(hql.endsWith("a.npNumber NOT LIKE :p1))"));
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", "internal");
+		order.verify(query).setParameter("p1", "X%");
+	}
+
+	@Test
+	void originAndParityBindsTheDigitsOfTheParity() {
+		QueryParameters parameters = new QueryParameters();
+
+		String hql = AssetCriteria.all().originAndParity("external", "even").toHql(parameters);
+
+		assertTrue(hql.contains("n.origin = :p0 AND n.parity = :p1"));
+		assertTrue(hql.contains("a.npNumber LIKE :p2"));
+		assertTrue(hql.endsWith("SUBSTRING(a.npNumber, LOCATE('/', a.npNumber) - 1, 1) IN (:p3)))"));
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", "external");
+		order.verify(query).setParameter("p1", "even");
+		order.verify(query).setParameter("p2", "X%");
+		order.verify(query).setParameter("p3", List.of("0", "2", "4", "6", "8"));
+	}
+
+	@Test
+	void unknownOriginAndParityValuesAreNotPassedOn() {
+		QueryParameters parameters = new QueryParameters();
+
+		AssetCriteria.all().originAndParity("elsewhere", "none").toHql(parameters);
+
+		Query query = mock(Query.class);
+		parameters.applyTo(query);
+		InOrder order = inOrder(query);
+		order.verify(query).setParameter("p0", "external");
+		order.verify(query).setParameter("p1", "odd");
+	}
+
+	@Test
+	void hasRequestOnlyAcceptsTheRequestFlags() {
+		assertEquals("a.ihc = true AND a.ehc = true",
+				AssetCriteria.all().hasRequest("ihc").hasRequest("ehc").toHql(new QueryParameters()));
+		assertThrows(IllegalArgumentException.class, () -> AssetCriteria.all().hasRequest("ihc = true OR 1"));
+	}
+
+}
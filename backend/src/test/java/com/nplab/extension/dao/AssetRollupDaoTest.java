@@ -0,0 +1,167 @@
+/**
+ * Tests of the refresh of the registration and completion rollups of AssetRollupDao and of the counts read from
+ * them, on a TrackerDb schema migrated by Flyway
+ */
+
+package com.nplab.extension.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import com.nplab.extension.db.DailyCount;
+import com.nplab.extension.db.RequestCount;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(AssetRollupDao.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AssetRollupDaoTest {
+	private static final String SCHEMA = "rollup";
+
+	private final DateTime today = new DateTime().withTimeAtStartOfDay();
+
+	@Autowired
+	private AssetRollupDao assetRollupDao;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@BeforeAll
+	static void startTrackerDb() throws Exception {
+		TrackerDb.createSchema(SCHEMA);
+	}
+
+	@DynamicPropertySource
+	static void trackerDb(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> TrackerDb.url(SCHEMA));
+	}
+
+	@BeforeEach
+	void insertCases() throws SQLException {
+		execute("DELETE FROM asset", "DELETE FROM asset_request", "DELETE FROM asset_daily_rollup",
+				"DELETE FROM asset_completed_rollup", "DELETE FROM asset_rollup_state");
+		insertCase("1/24", "Tumor", today.minusDays(10).plusHours(9), today.minusDays(7).plusHours(10), "2");
+		insertCase("X2/24", "Nerve", today.minusDays(10).plusHours(11), today.minusDays(2), "0");
+		insertCase("3/24", "Tumor", today.minusDays(5), null, "0");
+		insertCase("5/24", "Tumor", today.minusDays(3).plusHours(8), today.minusDays(1).plusHours(17), "0");
+		// Registered without a start time, which has no day in the registrations
+		insertCase("4/24", "Tumor", null, null, "0");
+	}
+
+	@Test
+	void firstRefreshComputesEveryDay() {
+		assertEquals(-1, assetRollupDao.refresh(new DateTime(), 1, false));
+
+		assertEquals(List.of(
+				new DailyCount(today.minusDays(10).toLocalDate().toString(), 1, 1),
+				new DailyCount(today.minusDays(5).toLocalDate().toString(), 1, 0),
+				new DailyCount(today.minusDays(3).toLocalDate().toString(), 1, 0)).toString(),
+				assetRollupDao.countDailyByOrigin(today.minusDays(10), today).toString());
+		assertEquals(4, assetRollupDao.countStartedBetween(today.minusDays(30), today.plusDays(1)));
+		assertTrue(assetRollupDao.countsMatch());
+	}
+
+	@Test
+	void reportsCountTheCasesCompletedDuringTheInterval() {
+		assetRollupDao.refresh(new DateTime(), 1, false);
+
+		SortedMap<Integer, Long> histogram = assetRollupDao.findTatHistogram("Tumor", today.minusDays(8), today.minusDays(1));
+		assertEquals(Map.of(2, 1L, 3, 1L), histogram);
+		assertEquals(List.of(2L, 1L), assetRollupDao.countByBiopsyTypes(List.of("Tumor", "Nerve"), today.minusDays(8),
+				today.minusDays(1)));
+		// Nerve is completed after the interval, although it was registered during it
+		assertEquals(List.of(1L, 0L), assetRollupDao.countByBiopsyTypes(List.of("Tumor", "Nerve"), today.minusDays(10),
+				today.minusDays(3)));
+		assertEquals(List.of(new RequestCount("2", 1).getRequestType() + " 1"),
+				requestCounts(assetRollupDao.findCountByRequestType("Tumor", 3, 5, today.minusDays(8), today.minusDays(1))));
+	}
+
+	@Test
+	void incrementalRefreshRecomputesTheTouchedDays() throws SQLException {
+		assetRollupDao.refresh(new DateTime(), 1, false);
+		insertCase("6/24", "Nerve", today.plusHours(8), null, "0");
+		execute("UPDATE asset SET end_time = '" + new Timestamp(today.plusHours(9).getMillis()) + "' WHERE np_number = '3/24'");
+		// Completed although it was registered without a start time
+		execute("UPDATE asset SET end_time = '" + new Timestamp(today.plusHours(10).getMillis()) + "' WHERE np_number = '4/24'");
+
+		// Today in both rollups, the registration day of 3/24 needing no recomputation
+		assertEquals(2, assetRollupDao.refresh(new DateTime().plusSeconds(1), 0, false));
+
+		assertEquals(5, assetRollupDao.countStartedBetween(today.minusDays(30), today.plusDays(1)));
+		assertEquals(List.of(2L), assetRollupDao.countByBiopsyTypes(List.of("Tumor"), today, today));
+		assertTrue(assetRollupDao.countsMatch());
+	}
+
+	@Test
+	void removedCasesNeedARebuild() throws SQLException {
+		assetRollupDao.refresh(new DateTime(), 1, false);
+		execute("DELETE FROM asset WHERE np_number = '1/24'");
+
+		assertEquals(0, assetRollupDao.refresh(new DateTime().plusSeconds(1), 0, false));
+		assertFalse(assetRollupDao.countsMatch());
+
+		assertEquals(-1, assetRollupDao.refresh(new DateTime().plusSeconds(1), 0, true));
+		assertTrue(assetRollupDao.countsMatch());
+		assertEquals(3, assetRollupDao.countStartedBetween(today.minusDays(30), today.plusDays(1)));
+	}
+
+	private static List<String> requestCounts(List<RequestCount> counts) {
+		List<String> result = new ArrayList<>();
+		for (RequestCount count : counts) {
+			result.add(count.getRequestType() + " " + count.getCount());
+		}
+		return result;
+	}
+
+	private void insertCase(String npNumber, String biopsyType, DateTime start, DateTime end, String requestCode)
+			throws SQLException {
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement asset = connection.prepareStatement("INSERT INTO asset VALUES (?, ?, ?, ?)");
+				PreparedStatement request = connection.prepareStatement(
+						"INSERT INTO asset_request (np_number, request_code) VALUES (?, ?)")) {
+			asset.setString(1, npNumber);
+			asset.setString(2, biopsyType);
+			asset.setTimestamp(3, (start == null) ? null : new Timestamp(start.getMillis()));
+			asset.setTimestamp(4, (end == null) ? null : new Timestamp(end.getMillis()));
+			asset.executeUpdate();
+			request.setString(1, npNumber);
+			request.setString(2, requestCode);
+			request.executeUpdate();
+		}
+	}
+
+	private void execute(String... statements) throws SQLException {
+		try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+			for (String sql : statements) {
+				statement.execute(sql);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,238 @@
+/**
+ * Tests that the queries of AssetSummaryDao are served by the indexes of the migrations. The migrations are run, with
+ * the indexes of asset_summary enabled, on a TrackerDb schema holding two years of cases, and the plan of every
+ * statement the queries send is checked not to read a table in full
+ */
+
+package com.nplab.extension.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.lang.reflect.InvocationTargetException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.sql.DataSource;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import net.ttddyy.dsproxy.QueryInfo;
+import net.ttddyy.dsproxy.proxy.ParameterSetOperation;
+import net.ttddyy.dsproxy.support.ProxyDataSourceBuilder;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import({ AssetSummaryDao.class, AssetSummaryDaoExplainTest.RecordingDataSource.class })
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class AssetSummaryDaoExplainTest {
+	private static final String SCHEMA = "summary_explain";
+	private static final int CASES = 5000;
+	private static final List<QueryInfo> executed = new CopyOnWriteArrayList<>();
+
+	private final DateTime today = new DateTime().withTimeAtStartOfDay();
+
+	@Autowired
+	private AssetSummaryDao assetSummaryDao;
+
+	@Autowired
+	private DataSource dataSource;
+
+	// TrackerDb exists with its cases before the migrations are run on it
+	@BeforeAll
+	static void startTrackerDb() throws Exception {
+		TrackerDb.createSchema(SCHEMA);
+		try (Connection connection = TrackerDb.connect(SCHEMA)) {
+			insertCases(connection);
+		}
+	}
+
+	@DynamicPropertySource
+	static void trackerDb(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> TrackerDb.url(SCHEMA));
+		registry.add("spring.flyway.placeholders.asset-summary-indexes", () -> "true");
+	}
+
+	// Two years of cases, the last few weeks of them partly pending, of a handful of biopsy types and requests
+	private static void insertCases(Connection connection) throws SQLException {
+		DateTime today = new DateTime().withTimeAtStartOfDay();
+		String[] biopsyTypes = { "Tumor", "Nerve", "Muscle", "Epilepsy", "Skin" };
+		try (PreparedStatement asset = connection.prepareStatement("INSERT INTO asset VALUES (?, ?, ?, ?)");
+				PreparedStatement request = connection.prepareStatement(
+						"INSERT INTO asset_request (np_number, ihc, decal, request_code) VALUES (?, ?, ?, ?)")) {
+			for (int i = 0; i < CASES; i ++) {
+				String npNumber = ((i % 4 == 0) ? "X" : "") + i + "/" + (24 - i % 2);
+				DateTime start = today.minusMinutes(i * 210);
+				boolean pending = i < 300 && i % 3 == 0;
+				asset.setString(1, npNumber);
+				asset.setString(2, biopsyTypes[i % biopsyTypes.length]);
+				asset.setTimestamp(3, new Timestamp(start.getMillis()));
+				asset.setTimestamp(4, pending ? null : new Timestamp(start.plusDays(1 + i % 9).getMillis()));
+				asset.addBatch();
+				request.setString(1, npNumber);
+				request.setBoolean(2, i % 5 == 0);
+				request.setBoolean(3, i % 7 == 0);
+				request.setString(4, (i % 5 == 0) ? "2" : "0");
+				request.addBatch();
+			}
+			asset.executeBatch();
+			request.executeBatch();
+		}
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ANALYZE TABLE asset, asset_request");
+		}
+	}
+
+	@Test
+	void indexesAreAddedToTheTableOfTheirLeadingColumn() throws SQLException {
+		Map<String, List<String>> indexes = new TreeMap<>();
+		try (Connection connection = dataSource.getConnection();
+				PreparedStatement statement = connection.prepareStatement(
+						"SELECT INDEX_NAME, COLUMN_NAME FROM information_schema.STATISTICS " +
+						"WHERE TABLE_SCHEMA = DATABASE() AND TABLE_NAME = 'asset' AND INDEX_NAME LIKE 'idx%' " +
+						"ORDER BY INDEX_NAME, SEQ_IN_INDEX");
+				ResultSet result = statement.executeQuery()) {
+			while (result.next()) {
+				indexes.computeIfAbsent(result.getString(1), name -> new ArrayList<>()).add(result.getString(2));
+			}
+		}
+
+		// TAT is computed by the view and request_code comes from asset_request, so both are left out
+		assertEquals(Map.of(
+				"idx_asset_summary_biopsy_tat", List.of("biopsy_type", "end_time", "start_time"),
+				"idx_asset_summary_end_start", List.of("end_time", "start_time", "biopsy_type"),
+				"idx_asset_summary_start_biopsy", List.of("start_time", "biopsy_type")), indexes);
+	}
+
+	@Test
+	void countsUseTheIndexes() throws SQLException {
+		assertIndexed(() -> assetSummaryDao.countByCriteria(AssetCriteria.all().pending()));
+		assertIndexed(() -> assetSummaryDao.countByCriteria(AssetCriteria.all().startedOnOrAfter(today.minusDays(30))
+				.startedOnOrBefore(today)));
+		assertIndexed(() -> assetSummaryDao.countByCriteria(processedLastMonth().biopsyType("Tumor").tatBetween(0, 5)
+				.hasRequest("ihc").origin("external")));
+		assertIndexed(() -> assetSummaryDao.countDailyByOrigin(today.minusDays(14), today));
+		assertIndexed(() -> assetSummaryDao.findDataVersion());
+	}
+
+	@Test
+	void bucketCountsUseTheIndexes() throws SQLException {
+		assertIndexed(() -> assetSummaryDao.countByBuckets(
+				List.of(AssetCriteria.all().biopsyType("Tumor"), AssetCriteria.all().biopsyType("Nerve")),
+				processedLastMonth()));
+		assertIndexed(() -> assetSummaryDao.countByBuckets(
+				List.of(AssetCriteria.all().startedOnOrAfter(today.minusDays(7)), AssetCriteria.all().startedBefore(today.minusDays(7))),
+				AssetCriteria.all().origin("internal").pending().startedOnOrAfter(today.minusDays(30)).startedOnOrBefore(today)));
+	}
+
+	@Test
+	void reportsUseTheIndexes() throws SQLException {
+		assertIndexed(() -> assetSummaryDao.findColumnStats("tat", AssetCriteria.all().hasTat()
+				.startedOnOrAfter(today.minusDays(14))));
+		assertIndexed(() -> assetSummaryDao.findTatHistogram(processedLastMonth().biopsyType("Tumor")));
+		assertIndexed(() -> assetSummaryDao.findCountByRequestType(processedLastMonth().biopsyType("Tumor").tatBetween(0, 5)));
+	}
+
+	@Test
+	void pendingListingsUseTheIndexes() throws SQLException {
+		assertIndexed(() -> assetSummaryDao.findPendingAssets(AssetCriteria.all()));
+		assertIndexed(() -> assetSummaryDao.findPendingAssets(AssetCriteria.all().originAndParity("external", "even")));
+		assertIndexed(() -> assetSummaryDao.findPendingAssets(AssetCriteria.all().startedAfterKey(today.minusDays(20), "10/24"), 26));
+		assertIndexed(() -> assetSummaryDao.findPendingAssetsStartedSince(today.minusDays(2)));
+		assertIndexed(() -> assetSummaryDao.streamPendingAssets(AssetCriteria.all().origin("internal"), asset -> { }));
+	}
+
+	// Reading all of the cases, as streamAssets(null, ...) does when the snapshot is built, is a full read by design
+	@Test
+	void changedCasesUseTheIndexes() throws SQLException {
+		assertIndexed(() -> assetSummaryDao.streamAssets(today.minusDays(2), row -> { }));
+		assertIndexed(() -> assetSummaryDao.findCompletedSince(today.minusDays(2)));
+	}
+
+	private AssetCriteria processedLastMonth() {
+		return AssetCriteria.all().processedDuring(today.minusDays(30), today);
+	}
+
+	/**
+	 * Runs a query of AssetSummaryDao and checks that EXPLAIN reports no full table read in the plan of any
+	 * statement it sent
+	 */
+	private void assertIndexed(Runnable query) throws SQLException {
+		executed.clear();
+		query.run();
+		List<QueryInfo> statements = new ArrayList<>(executed);
+		assertFalse(statements.isEmpty());
+
+		try (Connection connection = dataSource.getConnection()) {
+			for (QueryInfo statement : statements) {
+				for (List<ParameterSetOperation> parameters : statement.getParametersList()) {
+					assertNoFullRead(connection, statement.getQuery(), parameters);
+				}
+			}
+		}
+	}
+
+	private static void assertNoFullRead(Connection connection, String sql, List<ParameterSetOperation> parameters)
+			throws SQLException {
+		try (PreparedStatement explain = connection.prepareStatement("EXPLAIN " + sql)) {
+			// The values are bound again with the setters the query used
+			for (ParameterSetOperation parameter : parameters) {
+				try {
+					parameter.getMethod().invoke(explain, parameter.getArgs());
+				} catch (IllegalAccessException | InvocationTargetException e) {
+					throw new IllegalStateException(e);
+				}
+			}
+			try (ResultSet plan = explain.executeQuery()) {
+				while (plan.next()) {
+					assertNotEquals("ALL", plan.getString("type"), "Table " + plan.getString("table") + " is read in full by " + sql);
+				}
+			}
+		}
+	}
+
+	// Records the statements sent through the DataSource, with the values bound to them
+	@TestConfiguration
+	static class RecordingDataSource {
+
+		@Bean
+		static BeanPostProcessor recordingDataSourcePostProcessor() {
+			return new BeanPostProcessor() {
+				@Override
+				public Object postProcessAfterInitialization(Object bean, String beanName) {
+					if (!(bean instanceof DataSource)) {
+						return bean;
+					}
+					return ProxyDataSourceBuilder.create((DataSource) bean)
+							.afterQuery((execution, queries) -> executed.addAll(queries))
+							.build();
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,56 @@
+/**
+ * Embedded MariaDB standing in for TrackerDb in the tests, started once for all of them. Each test class gets its
+ * own schema holding the tables asset_summary is a view on, as the migrations find them before they run
+ */
+
+package com.nplab.extension.dao;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.datasource.init.ScriptUtils;
+
+import ch.vorburger.exec.ManagedProcessException;
+import ch.vorburger.mariadb4j.DB;
+import ch.vorburger.mariadb4j.DBConfiguration;
+import ch.vorburger.mariadb4j.DBConfigurationBuilder;
+
+final class TrackerDb {
+	private static DBConfiguration configuration;
+
+	private TrackerDb() {
+	}
+
+	/**
+	 * Starts the database if it is not running yet and creates a schema holding the TrackerDb tables
+	 * @param schema Name of the schema, which must not exist yet
+	 */
+	static synchronized void createSchema(String schema) throws ManagedProcessException, SQLException {
+		if (configuration == null) {
+			// mysqld refuses to run as root unless told to, and ignores the switch when run by anyone else
+			DBConfiguration started = DBConfigurationBuilder.newBuilder().setPort(0).addArg("--user=root").build();
+			DB.newEmbeddedDB(started).start();
+			configuration = started;
+		}
+		// Statements are sent over JDBC, the mysql client of the embedded database being left unused
+		try (Connection connection = connect("mysql"); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE DATABASE " + schema);
+		}
+		try (Connection connection = connect(schema)) {
+			ScriptUtils.executeSqlScript(connection, new ClassPathResource("db/tracker/asset_summary.sql"));
+		}
+	}
+
+	static Connection connect(String schema) throws SQLException {
+		return DriverManager.getConnection(url(schema), "root", "");
+	}
+
+	// Connector/J is the driver of the application, the URL of the embedded database is that of the MariaDB driver
+	static String url(String schema) {
+		return "jdbc:mysql://localhost:" + configuration.getPort() + "/" + schema + "?useSSL=false";
+	}
+
+}
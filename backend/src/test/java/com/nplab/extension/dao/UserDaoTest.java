@@ -0,0 +1,61 @@
+/**
+ * Tests of the lookup of users by username of UserDao, on a TrackerDb schema holding the user table
+ */
+
+package com.nplab.extension.dao;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.sql.Connection;
+import java.sql.Statement;
+
+import org.hibernate.NonUniqueResultException;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+@DataJpaTest
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Import(UserDao.class)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class UserDaoTest {
+	private static final String SCHEMA = "users";
+
+	@Autowired
+	private UserDao userDao;
+
+	@BeforeAll
+	static void insertUsers() throws Exception {
+		TrackerDb.createSchema(SCHEMA);
+		try (Connection connection = TrackerDb.connect(SCHEMA); Statement statement = connection.createStatement()) {
+			statement.execute("CREATE TABLE user (user_id INT PRIMARY KEY, username VARCHAR(45), password VARCHAR(100))");
+			statement.execute("INSERT INTO user VALUES (1, 'alice', 'a'), (2, 'bob', 'b'), (3, 'bob', 'c')");
+		}
+	}
+
+	@DynamicPropertySource
+	static void trackerDb(DynamicPropertyRegistry registry) {
+		registry.add("spring.datasource.url", () -> TrackerDb.url(SCHEMA));
+	}
+
+	@Test
+	void usersAreFoundByUsername() {
+		assertEquals(1, userDao.findByUsername("alice").getUserId());
+		assertNull(userDao.findByUsername("carol"));
+	}
+
+	@Test
+	void duplicateUsernamesAreNotHidden() {
+		assertThrows(NonUniqueResultException.class, () -> userDao.findByUsername("bob"));
+	}
+
+}
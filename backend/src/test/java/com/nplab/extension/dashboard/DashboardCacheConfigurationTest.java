@@ -0,0 +1,35 @@
+/**
+ * Tests of the keys of the dashboard caches made by DashboardCacheConfiguration
+ */
+
+package com.nplab.extension.dashboard;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+import java.lang.reflect.Method;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.cache.interceptor.KeyGenerator;
+
+import com.nplab.extension.dashboard.service.SampleStatsService;
+
+class DashboardCacheConfigurationTest {
+	private final KeyGenerator keyGenerator = new DashboardCacheConfiguration().dashboardCacheKeyGenerator(3600);
+
+	@Test
+	void overloadsSharingACacheHaveDifferentKeys() throws NoSuchMethodException {
+		Method byTime = SampleStatsService.class.getMethod("findPendingAssetsBreakout", List.class, List.class);
+		Method byType = SampleStatsService.class.getMethod("findPendingAssetsBreakout", List.class, List.class,
+				String.class);
+		List<Integer> startDays = List.of(0, 7);
+		List<Integer> endDays = List.of(6, 13);
+
+		assertEquals(keyGenerator.generate(null, byTime, startDays, endDays),
+				keyGenerator.generate(null, byTime, startDays, endDays));
+		assertNotEquals(keyGenerator.generate(null, byTime, startDays, endDays),
+				keyGenerator.generate(null, byType, startDays, endDays, null));
+	}
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Tests of the pages of pending cases of PendingAssetStats and of the cursors linking them
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import com.nplab.extension.dao.AssetCriteria;
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.PendingAsset;
+
+class PendingAssetStatsTest {
+	private final DateTime start = new DateTime(2024, 3, 1, 9, 30);
+	private final AssetSummaryDao assetSummaryDao = mock(AssetSummaryDao.class);
+	private final PendingAssetStats stats = new PendingAssetStats(assetSummaryDao);
+
+	@Test
+	void cursorKeepsTheStartTimeAndNpNumberOfTheLastCase() {
+		for (String npNumber : List.of("123/24", "X1/24", "a|b/24", "é+/=?&")) {
+			String cursor = PendingAssetStats.encodeCursor(new PendingAsset(npNumber, "Tumor", start));
+
+			assertTrue(cursor.matches("[A-Za-z0-9_-]+"), cursor);
+			PendingAsset last = PendingAssetStats.decodeCursor(cursor);
+			assertEquals(npNumber, last.getNpNumber());
+			assertEquals(start.getMillis(), last.getStartDateTime().getMillis());
+		}
+	}
+
+	// Not base64, no separator, no start time and a start time that is not a number
+	@ParameterizedTest
+	@ValueSource(strings = { "zz!", "MTIzNDU", "fDEyMy8yNA", "YWJjfDEyMy8yNA", "" })
+	void invalidCursorsAreRejected(String cursor) {
+		assertThrows(InvalidDashboardRequestException.class, () -> PendingAssetStats.decodeCursor(cursor));
+		assertThrows(InvalidDashboardRequestException.class, () -> stats.findPendingAssetsPage(null, null, cursor, 10));
+		verifyNoInteractions(assetSummaryDao);
+	}
+
+	@Test
+	void pageSizeMustBePositive() {
+		assertThrows(InvalidDashboardRequestException.class, () -> stats.findPendingAssetsPage(null, null, null, 0));
+		verifyNoInteractions(assetSummaryDao);
+	}
+
+	@Test
+	void pageSizeIsCapped() {
+		when(assetSummaryDao.findPendingAssets(any(AssetCriteria.class), anyInt())).thenReturn(List.of());
+
+		stats.findPendingAssetsPage(null, null, null, PendingAssetStats.MAX_PAGE_SIZE + 1);
+
+		verify(assetSummaryDao).findPendingAssets(any(AssetCriteria.class), eq(PendingAssetStats.MAX_PAGE_SIZE + 1));
+	}
+
+	@Test
+	void lastPageHasNoCursor() {
+		List<PendingAsset> assets = assets(3);
+		when(assetSummaryDao.findPendingAssets(any(AssetCriteria.class), eq(4))).thenReturn(assets);
+
+		PendingPage page = stats.findPendingAssetsPage(null, null, null, 3);
+
+		assertEquals(assets, page.getItems());
+		assertNull(page.getNext());
+	}
+
+	@Test
+	void fullPageLinksToTheCasesAfterItsLastOne() {
+		List<PendingAsset> assets = assets(4);
+		when(assetSummaryDao.findPendingAssets(any(AssetCriteria.class), eq(4))).thenReturn(assets);
+
+		PendingPage page = stats.findPendingAssetsPage("external", "odd", null, 3);
+
+		assertEquals(assets.subList(0, 3), page.getItems());
+		PendingAsset last = PendingAssetStats.decodeCursor(page.getNext());
+		assertEquals(assets.get(2).getNpNumber(), last.getNpNumber());
+		assertEquals(assets.get(2).getStartDateTime().getMillis(), last.getStartDateTime().getMillis());
+	}
+
+	private List<PendingAsset> assets(int count) {
+		List<PendingAsset> assets = new ArrayList<>();
+		for (int i = 0; i < count; i ++) {
+			assets.add(new PendingAsset((100 + i) + "/24", "Tumor", start.plusMinutes(i)));
+		}
+		return assets;
+	}
+
+}
@@ -0,0 +1,71 @@
+/**
+ * Tests of the queries PendingEventsService runs to find the changes to the pending list
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.verifyNoInteractions;
+import static org.mockito.Mockito.when;
+
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import com.nplab.extension.dao.AssetCriteria;
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.DataVersion;
+import com.nplab.extension.db.PendingAsset;
+
+class PendingEventsServiceTest {
+	private final DateTime start = new DateTime(2024, 3, 1, 9, 30);
+	private final AssetSummaryDao assetSummaryDao = mock(AssetSummaryDao.class);
+	private final PendingEventsService service = new PendingEventsService(assetSummaryDao, 60000);
+
+	@Test
+	void nothingIsReadWithoutSubscribers() {
+		service.detectChanges();
+
+		verifyNoInteractions(assetSummaryDao);
+	}
+
+	@Test
+	void subscribersAreSentTheCountOfTheLastCheck() {
+		when(assetSummaryDao.findDataVersion()).thenReturn(version(start, start.minusHours(1), 10));
+		service.subscribe();
+		verifyNoInteractions(assetSummaryDao);
+
+		service.detectChanges();
+		service.subscribe();
+
+		verify(assetSummaryDao, times(1)).countByCriteria(any(AssetCriteria.class));
+	}
+
+	@Test
+	void changesAreReadFromTheLatestTimesOfThePreviousCheck() {
+		DateTime end = start.minusHours(1);
+		when(assetSummaryDao.findDataVersion()).thenReturn(version(start, end, 10), version(start.plusHours(1), end, 11));
+		when(assetSummaryDao.findPendingAssetsStartedSince(any())).thenReturn(List.of(new PendingAsset("1/24", "Tumor", start)));
+		service.subscribe();
+
+		service.detectChanges();
+		service.detectChanges();
+		// Unchanged since the previous check
+		service.detectChanges();
+
+		verify(assetSummaryDao, times(2)).findPendingAssetsStartedSince(start);
+		verify(assetSummaryDao, times(2)).findCompletedSince(end);
+		verify(assetSummaryDao, never()).findPendingAssetsStartedSince(start.plusHours(1));
+		verify(assetSummaryDao, times(2)).countByCriteria(any(AssetCriteria.class));
+	}
+
+	private static DataVersion version(DateTime maxStartTime, DateTime maxEndTime, long count) {
+		return new DataVersion(maxStartTime.getMillis(), maxEndTime.getMillis(), count);
+	}
+
+}
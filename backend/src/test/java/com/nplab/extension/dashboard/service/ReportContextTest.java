@@ -0,0 +1,35 @@
+/**
+ * Tests of the time intervals of ReportContext given by the arguments of a report request
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.joda.time.LocalDate;
+import org.junit.jupiter.api.Test;
+
+class ReportContextTest {
+
+	@Test
+	void intervalDefaultsToTheCurrentYearWhenNotGiven() {
+		LocalDate today = new LocalDate();
+
+		assertEquals(new ReportContext(today.getYear() + "-01-01", today.toString()), ReportContext.ofOrCurrentYear(null, null));
+		assertEquals(new ReportContext("2024-01-01", "2024-03-31"), ReportContext.ofOrCurrentYear("2024-01-01", "2024-03-31"));
+	}
+
+	@Test
+	void partialIntervalsAreRejected() {
+		assertThrows(InvalidDashboardRequestException.class, () -> ReportContext.ofOrCurrentYear("2024-01-01", null));
+		assertThrows(InvalidDashboardRequestException.class, () -> ReportContext.ofOrCurrentYear(null, "2024-03-31"));
+	}
+
+	@Test
+	void invalidDatesAreRejected() {
+		assertThrows(InvalidDashboardRequestException.class, () -> new ReportContext("2024-13-01", "2024-03-31"));
+		assertThrows(InvalidDashboardRequestException.class, () -> ReportContext.ofOrCurrentYear("2024-01-01", "yesterday"));
+	}
+
+}
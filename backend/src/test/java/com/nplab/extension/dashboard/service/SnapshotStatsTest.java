@@ -0,0 +1,445 @@
+/**
+ * Tests of AssetSnapshot and SnapshotStats against the answers of the AssetCriteria queries, evaluated over the same
+ * fixed cases in memory. The cases lie on and around the day boundaries the queries use, and some have no biopsy
+ * type, start time, end time or request code
+ */
+
+package com.nplab.extension.dashboard.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+import org.joda.time.DateTime;
+import org.junit.jupiter.api.Test;
+
+import com.nplab.extension.dao.AssetSummaryDao;
+import com.nplab.extension.db.ColumnStats;
+import com.nplab.extension.db.DailyCount;
+import com.nplab.extension.db.DataVersion;
+import com.nplab.extension.db.PendingAsset;
+import com.nplab.extension.db.RequestCount;
+
+class SnapshotStatsTest {
+	private static final List<String> SAMPLE_TYPES = List.of("Tumor", "Nerve", "Muscle", "biopsy");
+
+	private final DateTime today = new DateTime().withTimeAtStartOfDay();
+
+	private final List<Case> cases = List.of(
+			new Case("100/24", "Tumor", today.minusDays(1).plusHours(10), null, null, null),
+			new Case("X101/24", "tumor biopsy", today.minusDays(5), null, null, "000000000"),
+			new Case("102/24", "Nerve", today.minusDays(90), null, null, null),
+			new Case("103/24", "Muscle", today.minusDays(90).minusMillis(1), null, null, null),
+			new Case("X104/24", "Tumor", today, null, null, null),
+			new Case("105/24", null, today.minusDays(2), null, null, null),
+			new Case("106/24", "Tumor", null, null, null, null),
+			new Case("107/24", "Tumor", null, today.minusDays(3), 4, "100000000", "specialStains"),
+			new Case("108/24", "Tumor", today.minusDays(20), today.minusDays(10), 10, "110000000", "specialStains", "ihc"),
+			new Case("X109/24", "Tumor", today.minusDays(15), today.minusDays(14), 1, "100000000", "specialStains"),
+			new Case("110/24", "Nerve biopsy", today.minusDays(40), today.minusDays(1), 39, "000000001", "ehc"),
+			new Case("111/24", "Tumor", today.minusDays(30), today.minusDays(30).plusHours(1), 0, null),
+			new Case("112/24", "Muscle", today.minusDays(400), today.minusDays(380), 20, "010000000", "ihc"),
+			new Case("113/24", "TUMOR", today.minusDays(7), today.minusDays(2), 5, "110000000", "specialStains", "ihc"),
+			new Case("114", "Tumor", today.minusDays(3), null, null, null),
+			new Case("X115/24", "Tumor", today.minusDays(8), null, null, null),
+			new Case("117/24", "Tumor", today, today.plusHours(1), 0, "001000000", "processAll"),
+			new Case("118/24", "Tumor", today.plusMillis(1), today.plusHours(2), 0, "001000000", "processAll"),
+			new Case("119/24", "Tumor biopsy", today.minusDays(70), today.minusDays(60), 10, "110000000", "specialStains",
+					"ihc"),
+			new Case("X120/24", "Tumor", today.minusDays(70), today.minusDays(60).minusMillis(1), 9, "100000000",
+					"specialStains"),
+			new Case("121/24", "Tumor", today.minusDays(20), today.minusDays(19), 1, "110000000", "specialStains", "ihc"),
+			new Case("X122/24", "Nerve", today.minusDays(1), today, 1, "000000001", "ehc"));
+
+	private final ReportContext context = new ReportContext(today.minusDays(60).toString("yyyy-MM-dd"),
+			today.toString("yyyy-MM-dd"));
+
+	@Test
+	void buildOrdersRowsByStartTimeAndNpNumber() {
+		AssetSnapshot snapshot = build(cases);
+
+		assertEquals(cases.size(), snapshot.size());
+		for (int row = 1; row < snapshot.size(); row ++) {
+			int byStart = Long.compare(snapshot.startTime(row - 1), snapshot.startTime(row));
+			assertTrue(byStart < 0 || (byStart == 0 && snapshot.npNumber(row - 1).compareTo(snapshot.npNumber(row)) < 0),
+					"Rows " + (row - 1) + " and " + row + " are out of order");
+		}
+		// Cases without a start time come first
+		assertEquals(List.of("106/24", "107/24"), List.of(snapshot.npNumber(0), snapshot.npNumber(1)));
+	}
+
+	@Test
+	void buildKeepsEveryColumn() {
+		AssetSnapshot snapshot = build(cases);
+
+		Map<String, Case> byNpNumber = cases.stream().collect(Collectors.toMap(c -> c.npNumber, c -> c));
+		for (int row = 0; row < snapshot.size(); row ++) {
+			assertRow(byNpNumber.get(snapshot.npNumber(row)), snapshot, row);
+		}
+	}
+
+	@Test
+	void binarySearchesFindTheBoundsOfATimeInterval() {
+		AssetSnapshot snapshot = build(cases);
+
+		long[] times = { Long.MIN_VALUE, Long.MIN_VALUE + 1, today.minusDays(90).minusMillis(1).getMillis(),
+				today.minusDays(90).getMillis(), today.minusDays(20).getMillis(), today.getMillis(),
+				today.plusMillis(1).getMillis(), today.plusDays(1).getMillis(), Long.MAX_VALUE };
+		for (long time : times) {
+			assertEquals(count(c -> c.startMillis() < time), snapshot.firstStartedOnOrAfter(time), "On or after " + time);
+			assertEquals(count(c -> c.startMillis() <= time), snapshot.firstStartedAfter(time), "After " + time);
+		}
+	}
+
+	@Test
+	void builderMergesChangedCasesIntoThePreviousSnapshot() {
+		AssetSnapshot base = build(cases);
+
+		// 100/24 is completed, 105/24 gets a biopsy type not seen before and a new case starts with 108/24
+		List<Case> changes = List.of(
+				new Case("100/24", "Tumor", today.minusDays(1).plusHours(10), today.minusHours(1), 0, "000010000", "decal"),
+				new Case("105/24", "Skin", today.minusDays(2), null, null, null),
+				new Case("108/23", "Skin", today.minusDays(20), null, null, null));
+		AssetSnapshot.Builder builder = new AssetSnapshot.Builder(base);
+		for (Case change : changes) {
+			builder.add(change.columns());
+		}
+		AssetSnapshot merged = builder.build(new DataVersion(0, 0, 0), 0);
+
+		Map<String, Case> expected = new LinkedHashMap<>();
+		for (Case c : cases) {
+			expected.put(c.npNumber, c);
+		}
+		for (Case c : changes) {
+			expected.put(c.npNumber, c);
+		}
+		AssetSnapshot rebuilt = build(new ArrayList<>(expected.values()));
+
+		assertEquals(rebuilt.size(), merged.size());
+		for (int row = 0; row < merged.size(); row ++) {
+			assertEquals(rebuilt.npNumber(row), merged.npNumber(row));
+			assertRow(expected.get(merged.npNumber(row)), merged, row);
+		}
+		// Codes of the previous snapshot are kept, the new biopsy type gets the next one
+		for (int row = 0; row < base.size(); row ++) {
+			if (base.biopsyTypeCode(row) != AssetSnapshot.NO_CODE) {
+				assertEquals(base.biopsyType(row), merged.biopsyTypeOf(base.biopsyTypeCode(row)));
+			}
+		}
+		assertEquals(base.biopsyTypeCount() + 1, merged.biopsyTypeCount());
+		assertEquals("Skin", merged.biopsyTypeOf(base.biopsyTypeCount()));
+	}
+
+	@Test
+	void findPendingAssetsMatchesTheLast90Days() {
+		SnapshotStats stats = stats(cases);
+
+		Predicate<Case> window = c -> c.pending() && c.startedOnOrAfter(today.minusDays(90)) && c.startedBefore(today);
+		assertEquals(npNumbers(window), pendingNpNumbers(stats.findPendingAssets()));
+		assertEquals(npNumbers(window.and(c -> c.external())),
+				pendingNpNumbers(stats.findPendingCasesByOrigin("external")));
+		assertEquals(npNumbers(window.and(c -> !c.external())),
+				pendingNpNumbers(stats.findPendingCasesByOrigin("internal")));
+		for (String origin : List.of("internal", "external")) {
+			for (String parity : List.of("even", "odd")) {
+				assertEquals(npNumbers(window.and(c -> c.external() == origin.equals("external") && parity.equals(c.parity()))),
+						pendingNpNumbers(stats.findPendingCasesByOriginAndParity(origin, parity)), origin + " " + parity);
+			}
+		}
+	}
+
+	@Test
+	void countPendingAssetsCountsEveryPendingCase() {
+		assertEquals(count(Case::pending), stats(cases).countPendingAssets());
+	}
+
+	@Test
+	void findPendingAssetBreakoutByTimeMatchesTheIntervalBounds() {
+		SnapshotStats stats = stats(cases);
+		List<Integer> startDays = List.of(0, 2, 5, 90);
+		List<Integer> endDays = List.of(2, 5, 90, 400);
+
+		List<Long> all = new ArrayList<>();
+		List<Long> external = new ArrayList<>();
+		List<Long> internalOdd = new ArrayList<>();
+		for (int i = 0; i < startDays.size(); i ++) {
+			DateTime start = today.minusDays(startDays.get(i));
+			DateTime end = today.minusDays(endDays.get(i));
+			all.add(count(c -> c.pending() && c.startedOnOrAfter(end) && c.startedOnOrBefore(start)));
+			Predicate<Case> openInterval = c -> c.pending() && c.startedAfter(end) && c.startedOnOrBefore(start);
+			external.add(count(openInterval.and(Case::external)));
+			internalOdd.add(count(openInterval.and(c -> !c.external() && "odd".equals(c.parity()))));
+		}
+
+		assertEquals(all, stats.findPendingAssetBreakoutByTime(startDays, endDays));
+		assertEquals(external, stats.findPendingAssetBreakoutByTime(startDays, endDays, "external"));
+		assertEquals(internalOdd, stats.findPendingAssetBreakoutByTime(startDays, endDays, "internal", "odd"));
+	}
+
+	@Test
+	void countCasesOverTimeCountsTheCasesRegisteredSinceTheStartOfThePeriod() {
+		SnapshotStats stats = stats(cases);
+
+		assertEquals(CasesCount.countCurrentMonth((from, to) -> count(c -> c.startedOnOrAfter(from) && c.startedOnOrBefore(to))),
+				stats.countCasesOverTime("month"));
+		assertEquals(CasesCount.countCurrentYear((from, to) -> count(c -> c.startedOnOrAfter(from) && c.startedOnOrBefore(to))),
+				stats.countCasesOverTime("year"));
+	}
+
+	@Test
+	void findDailyCountCountsEachDayByOrigin() {
+		List<String> expected = CasesCount.findDailyCount(10, (from, to) -> {
+			List<DailyCount> counts = new ArrayList<>();
+			for (DateTime day = from; day.isBefore(to); day = day.plusDays(1)) {
+				DateTime start = day;
+				DateTime end = day.plusDays(1);
+				Predicate<Case> onDay = c -> c.startedOnOrAfter(start) && c.startedBefore(end);
+				long external = count(onDay.and(Case::external));
+				long internal = count(onDay) - external;
+				if (internal + external > 0) {
+					counts.add(new DailyCount(day.toString().substring(0, 10), internal, external));
+				}
+			}
+			return counts;
+		}).stream().map(Object::toString).collect(Collectors.toList());
+
+		assertEquals(expected, stats(cases).findDailyCount(10).stream().map(Object::toString).collect(Collectors.toList()));
+	}
+
+	@Test
+	void findColumnStatsGivesThePopulationStandardDeviation() {
+		DateTime since = today.minusDays(60);
+		List<Integer> tats = cases.stream().filter(c -> c.tat != null && c.startedOnOrAfter(since)).map(c -> c.tat)
+				.collect(Collectors.toList());
+		double mean = tats.stream().mapToInt(Integer::intValue).average().getAsDouble();
+		double variance = tats.stream().mapToDouble(tat -> (tat - mean) * (tat - mean)).sum() / tats.size();
+
+		ColumnStats stats = stats(cases).findColumnStats("tat", since);
+		assertEquals(tats.size(), stats.getCount());
+		assertEquals(mean, stats.getMean(), 1e-9);
+		assertEquals(Math.sqrt(variance), stats.getStddev(), 1e-9);
+		assertEquals(tats.stream().mapToInt(Integer::intValue).max().getAsInt(), stats.getMax());
+		assertEquals(tats.stream().mapToInt(Integer::intValue).min().getAsInt(), stats.getMin());
+
+		ColumnStats none = stats(cases).findColumnStats("tat", today.plusDays(1));
+		assertEquals(0, none.getCount());
+	}
+
+	@Test
+	void findBreakoutBySampleTypeMatchesProcessedDuring() {
+		List<Long> expected = new ArrayList<>();
+		for (String sampleType : SAMPLE_TYPES) {
+			expected.add(count(c -> c.processedDuring(context) && c.biopsyType(sampleType)));
+		}
+
+		assertEquals(expected, stats(cases).findBreakoutBySampleType(context));
+	}
+
+	@Test
+	void tatBreakoutsMatchProcessedDuring() {
+		SnapshotStats stats = stats(cases);
+		for (String sampleType : SAMPLE_TYPES) {
+			SortedMap<Integer, Long> histogram = new TreeMap<>();
+			for (Case c : cases) {
+				if (c.processedDuring(context) && c.biopsyType(sampleType) && c.tat != null) {
+					histogram.merge(c.tat, 1L, Long::sum);
+				}
+			}
+
+			List<Integer> startValues = List.of(0, 2, 5, 10);
+			List<Integer> endValues = List.of(1, 4, 9, 100);
+			List<Long> ranges = new ArrayList<>();
+			for (int i = 0; i < startValues.size(); i ++) {
+				int tatStart = startValues.get(i);
+				int tatEnd = endValues.get(i);
+				ranges.add(count(c -> c.processedDuring(context) && c.biopsyType(sampleType) && c.tatBetween(tatStart, tatEnd)));
+			}
+
+			assertEquals(ranges, stats.findSampleBreakoutByTat(context, sampleType, startValues, endValues), sampleType);
+			assertEquals(new TatPercentiles(histogram).toString(), stats.findTatPercentiles(context, sampleType).toString(),
+					sampleType);
+		}
+	}
+
+	@Test
+	void findTatBreakoutByRequestsGroupsByRequestCode() {
+		for (String sampleType : SAMPLE_TYPES) {
+			Map<String, Long> counts = new TreeMap<>(Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+			for (Case c : cases) {
+				if (c.processedDuring(context) && c.biopsyType(sampleType) && c.tatBetween(0, 20)) {
+					counts.merge(c.requestCode, 1L, Long::sum);
+				}
+			}
+			List<String> expected = counts.entrySet().stream()
+					.map(count -> new RequestCount(count.getKey(), count.getValue()).toString()).collect(Collectors.toList());
+
+			assertEquals(expected, stats(cases).findTatBreakoutByRequests(context, 0, 20, sampleType).stream()
+					.map(Object::toString).collect(Collectors.toList()), sampleType);
+		}
+	}
+
+	@Test
+	void countByRequestsMatchesTheRequestFlagsAndOrigin() {
+		SnapshotStats stats = stats(cases);
+		List<List<String>> combinations = List.of(List.of(), List.of("specialStains"), List.of("specialStains", "ihc"),
+				List.of("ehc"), List.of("processAll"));
+		List<String> origins = new ArrayList<>(List.of("internal", "external"));
+		origins.add(null);
+		for (String sampleType : SAMPLE_TYPES) {
+			for (List<String> requests : combinations) {
+				for (String origin : origins) {
+					long expected = count(c -> c.processedDuring(context) && c.biopsyType(sampleType) && c.tatBetween(0, 20)
+							&& c.flags.containsAll(requests) && (origin == null || c.external() == origin.equals("external")));
+					assertEquals(expected, stats.countByRequests(context, sampleType, requests, 0, 20, origin),
+							sampleType + " " + requests + " " + origin);
+				}
+			}
+		}
+		assertEquals(0, stats.countByRequests(context, "Tumor", List.of(), 5, 4, null));
+	}
+
+	private AssetSnapshot build(List<Case> rows) {
+		AssetSnapshot.Builder builder = new AssetSnapshot.Builder();
+		for (Case c : rows) {
+			builder.add(c.columns());
+		}
+		return builder.build(new DataVersion(0, 0, rows.size()), 0);
+	}
+
+	private SnapshotStats stats(List<Case> rows) {
+		AssetSnapshot snapshot = build(rows);
+		return new SnapshotStats(() -> snapshot, SAMPLE_TYPES);
+	}
+
+	private long count(Predicate<Case> predicate) {
+		return cases.stream().filter(predicate).count();
+	}
+
+	// NP numbers of the cases in the order of the pending listings
+	private List<String> npNumbers(Predicate<Case> predicate) {
+		return cases.stream().filter(predicate)
+				.sorted(Comparator.comparingLong(Case::startMillis).thenComparing(c -> c.npNumber))
+				.map(c -> c.npNumber).collect(Collectors.toList());
+	}
+
+	private static List<String> pendingNpNumbers(List<PendingAsset> assets) {
+		return assets.stream().map(PendingAsset::getNpNumber).collect(Collectors.toList());
+	}
+
+	private static void assertRow(Case expected, AssetSnapshot snapshot, int row) {
+		String npNumber = expected.npNumber;
+		assertEquals(expected.startMillis(), snapshot.startTime(row), npNumber);
+		assertEquals(expected.pending(), snapshot.isPending(row), npNumber);
+		if (!expected.pending()) {
+			assertEquals(expected.end.getMillis(), snapshot.endTime(row), npNumber);
+		}
+		assertEquals((expected.tat == null) ? AssetSnapshot.NO_TAT : expected.tat, snapshot.tat(row), npNumber);
+		assertEquals(expected.biopsyType, snapshot.biopsyType(row), npNumber);
+		assertEquals(expected.requestCode, snapshot.requestCodeOf(snapshot.requestCode(row)), npNumber);
+		assertEquals(RequestCount.toMask(expected.requestCode), snapshot.requestMaskOf(snapshot.requestCode(row)), npNumber);
+		int flags = 0;
+		for (String flag : expected.flags) {
+			flags |= 1 << AssetSummaryDao.REQUEST_FLAGS.indexOf(flag);
+		}
+		assertEquals(flags, snapshot.requestFlags(row), npNumber);
+		assertEquals(expected.external(), (snapshot.npAttributes(row) & AssetSnapshot.EXTERNAL) != 0, npNumber);
+	}
+
+	/**
+	 * A row of asset_summary, with the conditions of AssetCriteria evaluated the way the database does: a
+	 * comparison with a missing value is never true, and LIKE ignores case
+	 */
+	private static final class Case {
+		private final String npNumber;
+		private final String biopsyType;
+		private final DateTime start;
+		private final DateTime end;
+		private final Integer tat;
+		private final String requestCode;
+		private final List<String> flags;
+
+		private Case(String npNumber, String biopsyType, DateTime start, DateTime end, Integer tat, String requestCode,
+				String... flags) {
+			this.npNumber = npNumber;
+			this.biopsyType = biopsyType;
+			this.start = start;
+			this.end = end;
+			this.tat = tat;
+			this.requestCode = requestCode;
+			this.flags = List.of(flags);
+		}
+
+		private Object[] columns() {
+			Object[] columns = new Object[6 + AssetSummaryDao.REQUEST_FLAGS.size()];
+			columns[0] = npNumber;
+			columns[1] = biopsyType;
+			columns[2] = start;
+			columns[3] = end;
+			columns[4] = tat;
+			columns[5] = requestCode;
+			for (int i = 0; i < AssetSummaryDao.REQUEST_FLAGS.size(); i ++) {
+				columns[6 + i] = flags.contains(AssetSummaryDao.REQUEST_FLAGS.get(i));
+			}
+			return columns;
+		}
+
+		// Start time as held by the snapshot, where cases without one come first
+		private long startMillis() {
+			return (start == null) ? Long.MIN_VALUE : start.getMillis();
+		}
+
+		private boolean pending() {
+			return end == null;
+		}
+
+		private boolean external() {
+			return npNumber.startsWith("X");
+		}
+
+		private String parity() {
+			int separator = npNumber.indexOf('/');
+			if (separator < 1) {
+				return "none";
+			}
+			return ((npNumber.charAt(separator - 1) - '0') % 2 == 0) ? "even" : "odd";
+		}
+
+		private boolean biopsyType(String sampleType) {
+			return biopsyType != null && biopsyType.toLowerCase().contains(sampleType.toLowerCase());
+		}
+
+		private boolean startedOnOrAfter(DateTime time) {
+			return start != null && !start.isBefore(time);
+		}
+
+		private boolean startedAfter(DateTime time) {
+			return start != null && start.isAfter(time);
+		}
+
+		private boolean startedOnOrBefore(DateTime time) {
+			return start != null && !start.isAfter(time);
+		}
+
+		private boolean startedBefore(DateTime time) {
+			return start != null && start.isBefore(time);
+		}
+
+		private boolean processedDuring(ReportContext context) {
+			return end != null && !end.isBefore(context.getStartDate()) && startedOnOrBefore(context.getEndDate());
+		}
+
+		private boolean tatBetween(int tatStart, int tatEnd) {
+			return tat != null && tatStart <= tat && tat <= tatEnd;
+		}
+	}
+
+}
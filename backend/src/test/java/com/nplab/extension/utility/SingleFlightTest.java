@@ -0,0 +1,133 @@
+/**
+ * Tests of the coalescing of concurrent calls by SingleFlight
+ */
+package com.nplab.extension.utility;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+class SingleFlightTest {
+	private final SingleFlight singleFlight = new SingleFlight();
+	private final ExecutorService executor = Executors.newCachedThreadPool();
+
+	@AfterEach
+	void shutdown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void callersArrivingWhileInFlightShareTheResult() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger runs = new AtomicInteger();
+		Object result = new Object();
+
+		Future<Object> first = executor.submit(() -> singleFlight.execute(List.of("pending"), () -> {
+			runs.incrementAndGet();
+			started.countDown();
+			await(release);
+			return result;
+		}));
+		started.await();
+		Thread[] waiting = new Thread[1];
+		Future<Object> second = executor.submit(() -> {
+			waiting[0] = Thread.currentThread();
+			return singleFlight.execute(List.of("pending"), () -> {
+				runs.incrementAndGet();
+				return new Object();
+			});
+		});
+		awaitBlocked(waiting);
+		release.countDown();
+
+		assertSame(result, first.get(5, TimeUnit.SECONDS));
+		assertSame(result, second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, runs.get());
+	}
+
+	@Test
+	void callersAfterCompletionComputeAgain() {
+		AtomicInteger runs = new AtomicInteger();
+		Supplier<Integer> computation = runs::incrementAndGet;
+
+		assertEquals(1, singleFlight.execute("count", computation));
+		assertEquals(2, singleFlight.execute("count", computation));
+	}
+
+	@Test
+	void differentKeysAreNotCoalesced() throws Exception {
+		CountDownLatch release = new CountDownLatch(1);
+		CompletableFuture<Object> blocked = CompletableFuture.supplyAsync(() -> singleFlight.execute(List.of("casesOverTime", "month"),
+				() -> {
+					await(release);
+					return "month";
+				}), executor);
+
+		assertEquals("year", singleFlight.execute(List.of("casesOverTime", "year"), () -> "year"));
+		release.countDown();
+		assertEquals("month", blocked.get(5, TimeUnit.SECONDS));
+	}
+
+	@Test
+	void failuresAreRethrownToEveryCaller() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		IllegalStateException failure = new IllegalStateException("query failed");
+
+		Future<Object> first = executor.submit(() -> singleFlight.execute("failing", () -> {
+			started.countDown();
+			await(release);
+			throw failure;
+		}));
+		started.await();
+		Thread[] waiting = new Thread[1];
+		Future<Object> second = executor.submit(() -> {
+			waiting[0] = Thread.currentThread();
+			return singleFlight.execute("failing", () -> "not run");
+		});
+		awaitBlocked(waiting);
+		release.countDown();
+
+		for (Future<Object> caller : List.of(first, second)) {
+			Exception e = assertThrows(Exception.class, () -> caller.get(5, TimeUnit.SECONDS));
+			assertSame(failure, e.getCause());
+		}
+		// The failure is not kept for later callers
+		assertEquals("recovered", singleFlight.execute("failing", () -> "recovered"));
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		}
+	}
+
+	// Waits until the caller running on the thread is parked, i.e. joined the computation in flight
+	private static void awaitBlocked(Thread[] thread) throws InterruptedException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (thread[0] == null || thread[0].getState() != Thread.State.WAITING) {
+			if (System.nanoTime() > deadline) {
+				throw new AssertionError("The second caller did not wait for the first one");
+			}
+			Thread.sleep(1);
+		}
+	}
+
+}
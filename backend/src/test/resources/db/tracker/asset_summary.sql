@@ -0,0 +1,30 @@
+-- Tables of TrackerDb asset_summary is a view on, as the migrations find them before they run.
+-- The cases are in asset, their special requests in asset_request and TAT is computed by the view.
+CREATE TABLE asset (
+	np_number VARCHAR(64) NOT NULL,
+	biopsy_type VARCHAR(255) NULL,
+	start_time DATETIME NULL,
+	end_time DATETIME NULL,
+	PRIMARY KEY (np_number)
+);
+
+CREATE TABLE asset_request (
+	np_number VARCHAR(64) NOT NULL,
+	special_stain TINYINT(1) NOT NULL DEFAULT 0,
+	ihc TINYINT(1) NOT NULL DEFAULT 0,
+	decal TINYINT(1) NOT NULL DEFAULT 0,
+	deeper TINYINT(1) NOT NULL DEFAULT 0,
+	process_all TINYINT(1) NOT NULL DEFAULT 0,
+	kept_for_fixation TINYINT(1) NOT NULL DEFAULT 0,
+	ehc TINYINT(1) NOT NULL DEFAULT 0,
+	semithin TINYINT(1) NOT NULL DEFAULT 0,
+	em TINYINT(1) NOT NULL DEFAULT 0,
+	request_code VARCHAR(16) NULL,
+	PRIMARY KEY (np_number)
+);
+
+CREATE VIEW asset_summary AS
+	SELECT a.np_number, a.biopsy_type, a.start_time, a.end_time, r.special_stain, r.ihc, r.decal, r.deeper,
+		r.process_all, r.kept_for_fixation, r.ehc, r.semithin, r.em, DATEDIFF(a.end_time, a.start_time) AS TAT,
+		r.request_code
+	FROM asset a JOIN asset_request r ON r.np_number = a.np_number;
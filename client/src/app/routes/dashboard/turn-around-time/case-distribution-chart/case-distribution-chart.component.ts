@@ -29,7 +29,8 @@ export class CaseDistributionChartComponent implements OnInit {
     this.startDate = this.datepipe.transform(this.startDate, 'yyyy-MM-dd');
     this.endDate = this.datepipe.transform(new Date(), 'yyyy-MM-dd');
     this.createCaseDistributionChart();
-    this.getCaseDistributionChart(this.startDate, this.endDate);
+    //the default range is shared with the tat and special request charts
+    this.turnAroundTimeService.dates.next([this.startDate, this.endDate]);
 
     //called when new dates are passed
     this.turnAroundTimeService.dates.subscribe((dates: string[]) => {
@@ -13,6 +13,7 @@ export class SpecialRequestChartComponent implements OnInit {
   specialRequestBreakoutChart: Partial<ChartOptions>;
   startTat: number;
   endTat: number;
+  dates: string[] = [];
 
   constructor(private turnAroundTimeService: TurnAroundTimeService) {}
 
@@ -34,6 +35,13 @@ export class SpecialRequestChartComponent implements OnInit {
       this.endTat = value[1];
       this.getSpecialRequestChart(this.startTat, this.endTat, this.category);
     });
+
+    //Called when the selected date range is changed
+    this.turnAroundTimeService.dates.subscribe((dates: string[]) => {
+      this.dates = dates;
+      if (this.startTat != null && this.endTat != null)
+        this.getSpecialRequestChart(this.startTat, this.endTat, this.category);
+    });
   }
 
   //Creates and empty chart
@@ -88,16 +96,24 @@ export class SpecialRequestChartComponent implements OnInit {
   }
 
   getSpecialRequestChart(
-    startDate: number,
-    endDate: number,
+    startTat: number,
+    endTat: number,
     category: string
   ): void {
     const typeNames = [];
     const typeSampleCount = [];
+    //Wait for the date range, the backend needs both of its dates
+    if (this.dates.length !== 2) return;
 
     //Fetches data from the backend
     this.turnAroundTimeService
-      .getSpecialRequests(startDate, endDate, category)
+      .getSpecialRequests(
+        startTat,
+        endTat,
+        category,
+        this.dates[0],
+        this.dates[1]
+      )
       .subscribe((data) => {
         if (data.length === 0) {
           ApexCharts.exec('special-request-chart', 'updateOptions', {
@@ -17,6 +17,7 @@ export class TurnAroundTimeChartComponent implements OnInit {
 
   startTat: number[];
   endTat: number[];
+  dates: string[] = [];
   pieChartLabels: string[];
 
   constructor(private turnAroundTimeService: TurnAroundTimeService) {}
@@ -44,6 +45,11 @@ export class TurnAroundTimeChartComponent implements OnInit {
       this.createPieChartLabels(this.startTat, this.endTat);
       this.getTatBreakoutChart(this.startTat, this.endTat);
     });
+    //Called when a different date range is selected
+    this.turnAroundTimeService.dates.subscribe((dates: string[]) => {
+      this.dates = dates;
+      this.getTatBreakoutChart(this.startTat, this.endTat);
+    });
   }
 
   //Initializing the chart
@@ -162,8 +168,16 @@ export class TurnAroundTimeChartComponent implements OnInit {
 
   //fetches the value from backend and updates them
   getTatBreakoutChart(tatStart: number[], tatEnd: number[]): void {
+    //Wait for the date range, the backend needs both of its dates
+    if (this.dates.length !== 2) return;
     this.turnAroundTimeService
-      .getTatBreakout(tatStart, tatEnd, this.category)
+      .getTatBreakout(
+        tatStart,
+        tatEnd,
+        this.category,
+        this.dates[0],
+        this.dates[1]
+      )
       .subscribe((data) => {
         ApexCharts.exec('turn-around-time-breakout', 'updateOptions', {
           series: data,
@@ -22,30 +22,42 @@ export class TurnAroundTimeService {
     );
   }
 
+  //startDate and endDate are sent together, the backend rejects a range missing one of them
   getTatBreakout(
     tatStartValues: number[],
     tatEndValues: number[],
-    biopsyType: string
+    biopsyType: string,
+    startDate: string,
+    endDate: string
   ): Observable<any[]> {
     return this.http.get<any[]>(
       `http://localhost:8080/api/dashboard/tat/${biopsyType}/${tatStartValues}/${tatEndValues}`,
-      { headers: this.headers }
+      {
+        headers: this.headers,
+        params: { startTime: startDate, endTime: endDate },
+      }
     );
   }
 
   getSpecialRequests(
-    startDate: number,
-    endDate: number,
-    biopsyType: string
+    tatStart: number,
+    tatEnd: number,
+    biopsyType: string,
+    startDate: string,
+    endDate: string
   ): Observable<any[]> {
     return this.http.get<any[]>(
-      `http://localhost:8080/api/dashboard/requests/${biopsyType}/${startDate}/${endDate}`,
-      { headers: this.headers }
+      `http://localhost:8080/api/dashboard/requests/${biopsyType}/${tatStart}/${tatEnd}`,
+      {
+        headers: this.headers,
+        params: { startTime: startDate, endTime: endDate },
+      }
     );
   }
 
   tatRanges: Subject<any[]> = new Subject<any[]>();
   category: BehaviorSubject<string> = new BehaviorSubject<string>('');
-  dates: Subject<string[]> = new Subject<string[]>();
+  //Selected [startDate, endDate], empty until the case distribution sets its default range
+  dates: BehaviorSubject<string[]> = new BehaviorSubject<string[]>([]);
   selectedTatRange: BehaviorSubject<any[]> = new BehaviorSubject<any[]>([]);
 }